@@ -0,0 +1,187 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.minecraftplus.srgprocessor.Dictionary;
+
+/**
+ * Generates the inputs of the benchmarks, so they don't depend on any game jar or mappings.
+ * <p>
+ * Classes are named {@code c/C0} to {@code c/C<n>}, each one has {@code members} final fields
+ * {@code f<i>} and methods {@code m<i>(ILjava/lang/String;)V} calling the same method of the
+ * next class. The mappings cover every class and member, and the first parameter of every method.
+ */
+final class BenchmarkData {
+
+    static final InheritanceProvider NO_INHERITANCE = klass -> Optional.empty();
+
+    static String className(int index) {
+        return "c/C" + index;
+    }
+
+    static byte[] createClass(int index, int members) {
+        final String name = className(index);
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", null);
+
+        for (int i = 0; i < members; i++) {
+            final FieldVisitor fv = writer.visitField(ACC_PRIVATE | ACC_FINAL, "f" + i, "I", null, null);
+            fv.visitEnd();
+        }
+
+        for (int i = 0; i < members; i++)
+            createMethod(writer, name, className(index + 1), "m" + i);
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Creates a non-static inner class of {@code c/C<index>} with an annotated
+     * constructor parameter, the kind of class the ParameterAnnotationFixer works on.
+     */
+    static byte[] createInnerClass(int index, int members) {
+        final String outer = className(index);
+        final String name = outer + "$Inner";
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", null);
+        writer.visitInnerClass(name, outer, "Inner", ACC_PUBLIC);
+        writer.visitField(ACC_FINAL | ACC_SYNTHETIC, "this$0", "L" + outer + ";", null, null).visitEnd();
+
+        final MethodVisitor init = writer.visitMethod(ACC_PUBLIC, "<init>", "(L" + outer + ";I)V", null, null);
+        init.visitAnnotableParameterCount(2, true);
+        init.visitParameterAnnotation(1, "Ljavax/annotation/Nonnull;", true).visitEnd();
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitVarInsn(ALOAD, 1);
+        init.visitFieldInsn(PUTFIELD, name, "this$0", "L" + outer + ";");
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        for (int i = 0; i < members; i++)
+            createMethod(writer, name, className(index + 1), "m" + i);
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void createMethod(ClassWriter writer, String owner, String next, String name) {
+        final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, name, "(ILjava/lang/String;)V", null, null);
+        final Label start = new Label();
+        final Label end = new Label();
+        mv.visitCode();
+        mv.visitLabel(start);
+        mv.visitTypeInsn(NEW, next);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, next, "<init>", "()V", false);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKEVIRTUAL, next, name, "(ILjava/lang/String;)V", false);
+        mv.visitInsn(RETURN);
+        mv.visitLabel(end);
+        mv.visitLocalVariable("this", "L" + owner + ";", null, start, end, 0);
+        mv.visitLocalVariable("a", "I", null, start, end, 1);
+        mv.visitLocalVariable("b", "Ljava/lang/String;", null, start, end, 2);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    static MappingSet createMappings(int classes, int members) {
+        final MappingSet mappings = MappingSet.create();
+        for (int c = 0; c < classes; c++) {
+            final ClassMapping<?, ?> cls = mappings.getOrCreateClassMapping(className(c))
+                    .setDeobfuscatedName("net/example/Class" + c);
+            mappings.getOrCreateClassMapping(className(c) + "$Inner").setDeobfuscatedName("Inner");
+            for (int i = 0; i < members; i++) {
+                cls.getOrCreateFieldMapping("f" + i, "I").setDeobfuscatedName("field_" + i);
+                final MethodMapping method = cls.getOrCreateMethodMapping("m" + i, "(ILjava/lang/String;)V")
+                        .setDeobfuscatedName("method_" + i);
+                method.getOrCreateParameterMapping(1).setDeobfuscatedName("p_" + i + "_1");
+            }
+        }
+        return mappings;
+    }
+
+    /**
+     * Creates tsrg2 text equivalent to {@link #createMappings(int, int)}, with an extra
+     * static method per class to cover the parameter index shifting.
+     */
+    static String createTSrg2(int classes, int members) {
+        final StringBuilder buf = new StringBuilder("tsrg2 obf srg\n");
+        for (int c = 0; c < classes; c++) {
+            buf.append(className(c)).append(" net/example/Class").append(c).append('\n');
+            for (int i = 0; i < members; i++)
+                buf.append("\tf").append(i).append(" field_").append(i).append('\n');
+            for (int i = 0; i < members; i++) {
+                buf.append("\tm").append(i).append(" (ILjava/lang/String;)V method_").append(i).append('\n');
+                buf.append("\t\t1 a p_").append(i).append("_1\n");
+            }
+            buf.append("\ts (JLjava/lang/String;)V static_method\n");
+            buf.append("\t\tstatic\n");
+            buf.append("\t\t0 a p_static_0\n");
+            buf.append("\t\t1 b p_static_1\n");
+        }
+        return buf.toString();
+    }
+
+    static Dictionary createDictionary(int rules) throws IOException {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("^Z$ flag\n^I$ i\n^String$ s\n");
+        for (int i = 0; i < rules; i++) {
+            switch (i % 4) {
+                case 0: buf.append("^Class").append(i).append("$ class").append(i).append('\n'); break;
+                case 1: buf.append("^Class").append(i).append("$:net/example/.* LAST\n"); break;
+                case 2: buf.append("^(.*)Builder").append(i).append("$ $1b\n"); break;
+                default: buf.append("^Entity").append(i).append("(.*)$ PREFIX:e\n");
+            }
+        }
+        return new Dictionary().load(new ByteArrayInputStream(buf.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static void createJar(Path path, int classes, int members) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "c.C0");
+        try (OutputStream out = Files.newOutputStream(path);
+             JarOutputStream jar = new JarOutputStream(out, manifest)) {
+            for (int c = 0; c < classes; c++) {
+                jar.putNextEntry(new ZipEntry(className(c) + ".class"));
+                jar.write(createClass(c, members));
+                jar.closeEntry();
+            }
+        }
+    }
+
+    private BenchmarkData() {
+    }
+}
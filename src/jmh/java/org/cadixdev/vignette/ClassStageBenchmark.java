@@ -0,0 +1,66 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette;
+
+import net.minecraftforge.lex.ConstructorInjector;
+import net.minecraftforge.lex.ParameterAnnotationFixer;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.minecraftplus.Log;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the ConstructorInjector and the ParameterAnnotationFixer on their own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassStageBenchmark {
+
+    /** Number of fields and methods of the transformed class */
+    @Param({ "10", "100", "1000" })
+    public int classSize;
+
+    /** Number of classes in the mappings */
+    @Param({ "1000", "10000" })
+    public int mappingSize;
+
+    private JarClassEntry entry;
+    private JarClassEntry innerEntry;
+    private ConstructorInjector constructorInjector;
+    private ParameterAnnotationFixer parameterAnnotationFixer;
+
+    @Setup
+    public void setup() {
+        this.entry = new JarClassEntry(BenchmarkData.className(0) + ".class", 0, BenchmarkData.createClass(0, classSize));
+        this.innerEntry = new JarClassEntry(BenchmarkData.className(0) + "$Inner.class", 0, BenchmarkData.createInnerClass(0, classSize));
+        // Only the transformers are measured, not writing their messages
+        final Log log = new Log(System.out, Log.Level.QUIET);
+        this.constructorInjector = new ConstructorInjector(BenchmarkData.NO_INHERITANCE, BenchmarkData.createMappings(mappingSize, 1), log);
+        this.parameterAnnotationFixer = new ParameterAnnotationFixer(log);
+    }
+
+    @Benchmark
+    public JarClassEntry injectConstructor() {
+        return this.constructorInjector.transform(this.entry);
+    }
+
+    @Benchmark
+    public JarClassEntry fixParameterAnnotations() {
+        return this.parameterAnnotationFixer.transform(this.innerEntry);
+    }
+
+    @Benchmark
+    public JarClassEntry fixParameterAnnotationsUnaffected() {
+        return this.parameterAnnotationFixer.transform(this.entry);
+    }
+
+}
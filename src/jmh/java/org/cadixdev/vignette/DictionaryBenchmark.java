@@ -0,0 +1,58 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette;
+
+import org.minecraftplus.srgprocessor.Dictionary;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the evaluation of dictionary rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DictionaryBenchmark {
+
+    /** Number of parameter type names evaluated per operation */
+    @Param({ "10", "100", "1000" })
+    public int nameCount;
+
+    /** Number of rules in the dictionary */
+    @Param({ "100", "1000" })
+    public int ruleCount;
+
+    private Dictionary dictionary;
+    private String[] names;
+
+    @Setup
+    public void setup() throws IOException {
+        this.dictionary = BenchmarkData.createDictionary(ruleCount);
+        this.names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            switch (i % 4) {
+                case 0: this.names[i] = "Class" + i; break;
+                case 1: this.names[i] = "String"; break;
+                case 2: this.names[i] = "FooBuilder" + i; break;
+                default: this.names[i] = "EntityLivingBase";
+            }
+        }
+    }
+
+    @Benchmark
+    public void apply(Blackhole blackhole) {
+        for (String name : this.names)
+            blackhole.consume(this.dictionary.apply(name, "net/example/" + name));
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette;
+
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.vignette.jar.JarWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Benchmarks compressing, in parallel, and writing the output jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JarWriterBenchmark {
+
+    /** Number of fields and methods of every class */
+    @Param({ "10", "100" })
+    public int classSize;
+
+    /** Number of classes in the jar */
+    @Param({ "1000", "10000" })
+    public int classCount;
+
+    /** Whether to write a stable jar */
+    @Param({ "false", "true" })
+    public boolean stable;
+
+    /** Compression level, or "store" */
+    @Param({ "store", "1", "-1" })
+    public String compression;
+
+    private JarClassEntry[] entries;
+    private Path output;
+
+    @Setup
+    public void setup() throws IOException {
+        this.entries = new JarClassEntry[classCount];
+        for (int i = 0; i < classCount; i++)
+            this.entries[i] = new JarClassEntry(BenchmarkData.className(i) + ".class", 0, BenchmarkData.createClass(i, classSize));
+        this.output = Files.createTempFile("vignette-bench", ".jar");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.output);
+    }
+
+    @Benchmark
+    public Path writeJar() throws IOException {
+        try (JarWriter writer = "store".equals(compression)
+                ? new JarWriter(stable, ZipEntry.STORED, Deflater.DEFAULT_COMPRESSION)
+                : new JarWriter(stable, ZipEntry.DEFLATED, Integer.parseInt(compression))) {
+            IntStream.range(0, this.entries.length).parallel().forEach(i -> writer.add(this.entries[i]));
+            writer.write(this.output);
+        }
+        return this.output;
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette;
+
+import net.minecraftforge.lex.TSrg2Format;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.vignette.cache.MappingCache;
+import org.minecraftplus.Log;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the startup of a short job with compiled mappings: opening them
+ * and looking up a few classes, compare with {@link TSrg2ReaderBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingCacheBenchmark {
+
+    /** Number of fields and methods of every class */
+    @Param({ "10", "100" })
+    public int classSize;
+
+    /** Number of classes in the mappings */
+    @Param({ "1000", "10000" })
+    public int mappingSize;
+
+    /** Number of classes looked up */
+    @Param({ "10" })
+    public int lookups;
+
+    private final TSrg2Format format = new TSrg2Format();
+    private Path mappings;
+
+    @Setup
+    public void setup() throws IOException {
+        this.mappings = Files.createTempFile("vignette-bench", ".tsrg");
+        Files.write(this.mappings, BenchmarkData.createTSrg2(mappingSize, classSize).getBytes(StandardCharsets.UTF_8));
+        // Compiles the mappings
+        MappingCache.read(this.format, this.mappings, Log.none());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(MappingCache.getCacheFile(this.mappings));
+        Files.deleteIfExists(this.mappings);
+    }
+
+    @Benchmark
+    public MappingSet openAndLookup() throws IOException {
+        final MappingSet ret = MappingCache.read(this.format, this.mappings, Log.none());
+        for (int i = 0; i < lookups; i++)
+            ret.getClassMapping(BenchmarkData.className(i * (mappingSize / lookups)));
+        return ret;
+    }
+
+}
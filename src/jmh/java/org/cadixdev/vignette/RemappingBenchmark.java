@@ -0,0 +1,68 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette;
+
+import net.minecraftforge.lex.EnhancedRemappingTransformer;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.lorenz.MappingSet;
+import org.minecraftplus.EnhancedDeducingRemappingTransformer;
+import org.minecraftplus.MappingCompleter;
+import org.minecraftplus.ParameterIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks remapping a single class with both remapping transformers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RemappingBenchmark {
+
+    /** Number of fields and methods of the remapped class */
+    @Param({ "10", "100", "1000" })
+    public int classSize;
+
+    /** Number of classes in the mappings */
+    @Param({ "1000", "10000" })
+    public int mappingSize;
+
+    private JarClassEntry entry;
+    private EnhancedRemappingTransformer remapping;
+    private EnhancedDeducingRemappingTransformer deducing;
+
+    @Setup
+    public void setup() throws IOException {
+        final MappingSet mappings = BenchmarkData.createMappings(mappingSize, classSize);
+        final List<String> classNames = Collections.singletonList(BenchmarkData.className(0));
+        new MappingCompleter(mappings, BenchmarkData.NO_INHERITANCE, classNames, 1).complete();
+        final ParameterIndex parameters = ParameterIndex.build(mappings, classNames);
+
+        this.entry = new JarClassEntry(BenchmarkData.className(0) + ".class", 0, BenchmarkData.createClass(0, classSize));
+        this.remapping = new EnhancedRemappingTransformer(mappings, parameters, BenchmarkData.NO_INHERITANCE, false);
+        this.deducing = new EnhancedDeducingRemappingTransformer(mappings, parameters,
+                Collections.singleton(BenchmarkData.createDictionary(100)), BenchmarkData.NO_INHERITANCE, false);
+    }
+
+    @Benchmark
+    public JarClassEntry remap() {
+        return this.remapping.transform(this.entry);
+    }
+
+    @Benchmark
+    public JarClassEntry remapDeducing() {
+        return this.deducing.transform(this.entry);
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette;
+
+import net.minecraftforge.lex.TSrg2Format;
+import org.cadixdev.lorenz.MappingSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading tsrg2 mappings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TSrg2ReaderBenchmark {
+
+    /** Number of fields and methods of every class */
+    @Param({ "10", "100" })
+    public int classSize;
+
+    /** Number of classes in the mappings */
+    @Param({ "1000", "10000" })
+    public int mappingSize;
+
+    private final TSrg2Format format = new TSrg2Format();
+    private String text;
+
+    @Setup
+    public void setup() {
+        this.text = BenchmarkData.createTSrg2(mappingSize, classSize);
+    }
+
+    @Benchmark
+    public MappingSet read() throws IOException {
+        return this.format.createReader(new StringReader(this.text)).read();
+    }
+
+}
@@ -2,60 +2,169 @@
 
 import static org.objectweb.asm.Opcodes.*;
 
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import org.cadixdev.atlas.AtlasTransformerContext;
 import org.cadixdev.bombe.analysis.InheritanceProvider;
 import org.cadixdev.bombe.analysis.InheritanceProvider.ClassInfo;
 import org.cadixdev.bombe.analysis.InheritanceType;
-import org.cadixdev.bombe.jar.JarClassEntry;
-import org.cadixdev.bombe.jar.JarEntryTransformer;
 import org.cadixdev.bombe.type.BaseType;
 import org.cadixdev.bombe.type.FieldType;
 import org.cadixdev.bombe.type.MethodDescriptor;
 import org.cadixdev.bombe.type.ObjectType;
 import org.cadixdev.bombe.type.signature.MethodSignature;
 import org.cadixdev.lorenz.MappingSet;
-import org.objectweb.asm.ClassReader;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.InnerClassMapping;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
+import org.minecraftplus.ChangeTracking;
+import org.minecraftplus.ClassStage;
+import org.minecraftplus.CompactRemapper;
+import org.minecraftplus.Log;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 
-public class ConstructorInjector implements JarEntryTransformer {
+public class ConstructorInjector implements ClassStage {
     private static final MethodDescriptor EMPTY = MethodDescriptor.of("()V");
     private final InheritanceProvider inh;
-    private final MappingSet o2m, m2o;
+    private final MappingSet o2m;
+    private final CompactRemapper compact;
+    private final Log log;
+    // The shortest <init> of every super class, they are shared by many classes
+    private final Map<String, MethodDescriptor> superInits = new ConcurrentHashMap<>();
+    // The obfuscated names of the top level classes by their deobfuscated name, indexed when first needed
+    private volatile Map<String, String> obfTopLevel;
 
     public ConstructorInjector(AtlasTransformerContext ctx, MappingSet mappings) {
-        this.inh = ctx.inheritanceProvider();
+        this(ctx.inheritanceProvider(), mappings);
+    }
+
+    public ConstructorInjector(InheritanceProvider inh, MappingSet mappings) {
+        this(inh, mappings, Log.none());
+    }
+
+    public ConstructorInjector(InheritanceProvider inh, MappingSet mappings, Log log) {
+        this.inh = inh;
         this.o2m = mappings;
-        this.m2o = mappings.reverse();
+        this.compact = null;
+        this.log = log;
+    }
+
+    public ConstructorInjector(InheritanceProvider inh, CompactRemapper remapper, Log log) {
+        this.inh = inh;
+        this.o2m = null;
+        this.compact = remapper;
+        this.log = log;
+    }
+
+    private MethodDescriptor findSuper(ObjectType parent) {
+        // Plain get first, computeIfAbsent locks even when the value is present
+        MethodDescriptor ret = superInits.get(parent.getClassName());
+        if (ret == null)
+            ret = superInits.computeIfAbsent(parent.getClassName(), this::computeSuper);
+        return ret;
+    }
+
+    private MethodDescriptor computeSuper(String parent) {
+        boolean obfed = false;
+
+        Optional<ClassInfo> pcls = inh.provide(parent);
+        if (!pcls.isPresent()) {
+            pcls = inh.provide(obfuscate(parent));
+            if (pcls.isPresent())
+                obfed = true;
+        }
+
+        MethodDescriptor sig = null;
+        if (pcls.isPresent()) {
+            for (Entry<MethodSignature, InheritanceType> entry : pcls.get().getMethods().entrySet()) {
+                if (!"<init>".equals(entry.getKey().getName()) || entry.getValue() == InheritanceType.NONE)
+                    continue;
+                MethodDescriptor edesc = entry.getKey().getDescriptor();
+                if (sig == null)
+                    sig = edesc;
+                else if (edesc.getParamTypes().size() < sig.getParamTypes().size())
+                    sig = edesc;
+                else if (edesc.getParamTypes().size() == sig.getParamTypes().size()) {
+                    if (edesc.toString().compareTo(sig.toString()) < 0) // Simple string sort in case different ordering of the methods map.
+                        sig = edesc;
+                }
+            }
+        }
+
+        return sig == null ? EMPTY : obfed ? deobfuscate(sig) : sig;
+    }
+
+    private MethodDescriptor deobfuscate(MethodDescriptor desc) {
+        return compact == null ? o2m.deobfuscate(desc) : MethodDescriptor.of(compact.mapMethodDesc(desc.toString()));
+    }
+
+    /**
+     * Gets the obfuscated name of a deobfuscated class, like the reversed mappings
+     * would, without reversing all of them. Inner classes are looked up in the
+     * mapping of their outer class.
+     */
+    private String obfuscate(String name) {
+        if (compact != null)
+            return compact.getMappings().unmapClass(name);
+
+        Map<String, String> index = obfTopLevel;
+        if (index == null) {
+            synchronized (this) {
+                index = obfTopLevel;
+                if (index == null) {
+                    index = new HashMap<>();
+                    for (TopLevelClassMapping cls : o2m.getTopLevelClassMappings())
+                        index.put(cls.getFullDeobfuscatedName(), cls.getFullObfuscatedName());
+                    obfTopLevel = index;
+                }
+            }
+        }
+
+        String ret = index.get(name);
+        if (ret != null)
+            return ret;
+        int split = name.lastIndexOf('$');
+        if (split < 0)
+            return name;
+
+        String outer = obfuscate(name.substring(0, split));
+        String inner = name.substring(split + 1);
+        Optional<? extends ClassMapping<?, ?>> outerMapping = o2m.getClassMapping(outer);
+        if (outerMapping.isPresent()) {
+            for (InnerClassMapping cls : outerMapping.get().getInnerClassMappings()) {
+                if (inner.equals(cls.getDeobfuscatedName()))
+                    return cls.getFullObfuscatedName();
+            }
+        }
+        return outer + '$' + inner;
     }
 
     @Override
-    public JarClassEntry transform(final JarClassEntry entry) {
-        final ClassReader reader = new ClassReader(entry.getContents());
-        final ClassWriter writer = new ClassWriter(reader, 0);
-        reader.accept(new InitAdder(writer), 0);
-        return new JarClassEntry(entry.getName(), entry.getTime(), writer.toByteArray());
+    public ClassVisitor createVisitor(final ClassVisitor parent) {
+        return new InitAdder(parent);
     }
 
-    private class InitAdder extends ClassVisitor {
+    private class InitAdder extends ClassVisitor implements ChangeTracking {
         private String className, parentName, parentField;
         private ObjectType superType;
         private boolean hasInit = false;
+        private boolean added = false;
         private boolean isStatic = false;
         private Map<String, FieldType> fields = new LinkedHashMap<>();
+        private final Log.Buffer messages = ConstructorInjector.this.log.buffer();
 
         public InitAdder(ClassVisitor cv) {
             super(ASM9, cv);
         }
 
         private void log(String message) {
-            System.out.println(message);
+            messages.info(message);
         }
 
         @Override
@@ -94,6 +203,16 @@ public MethodVisitor visitMethod(int access, String name, String desc, String si
 
         @Override
         public void visitEnd() {
+            addInit();
+            messages.flush();
+        }
+
+        @Override
+        public boolean hasChanged() {
+            return added;
+        }
+
+        private void addInit() {
             boolean isInner = parentField != null && parentName != null && !isStatic;
             if (hasInit) {
                 super.visitEnd();
@@ -107,6 +226,7 @@ public void visitEnd() {
             }
 
             log("  Adding synthetic <init> to " + className);
+            added = true;
 
             MethodVisitor mv;
             if (isInner)
@@ -145,39 +265,6 @@ public void visitEnd() {
             super.visitEnd();
         }
 
-        private MethodDescriptor findSuper(ObjectType parent) {
-            boolean obfed = false;
-            InheritanceProvider inh = ConstructorInjector.this.inh;
-            MappingSet o2m = ConstructorInjector.this.o2m;
-            MappingSet m2o = ConstructorInjector.this.m2o;
-
-            Optional<ClassInfo> pcls = inh.provide(parent.getClassName());
-            if (!pcls.isPresent()) {
-                pcls = inh.provide(((ObjectType)m2o.deobfuscate(parent)).getClassName());
-                if (pcls.isPresent())
-                    obfed = true;
-            }
-
-            MethodDescriptor sig = null;
-            if (pcls.isPresent()) {
-                for (Entry<MethodSignature, InheritanceType> entry : pcls.get().getMethods().entrySet()) {
-                    if (!"<init>".equals(entry.getKey().getName()) || entry.getValue() == InheritanceType.NONE)
-                        continue;
-                    MethodDescriptor edesc = entry.getKey().getDescriptor();
-                    if (sig == null)
-                        sig = edesc;
-                    else if (edesc.getParamTypes().size() < sig.getParamTypes().size())
-                        sig = edesc;
-                    else if (edesc.getParamTypes().size() == sig.getParamTypes().size()) {
-                        if (edesc.toString().compareTo(sig.toString()) < 0) // Simple string sort in case different ordering of the methods map.
-                            sig = edesc;
-                    }
-                }
-            }
-
-            return sig == null ? EMPTY : obfed ? o2m.deobfuscate(sig) : sig;
-        }
-
         private void loadConstant(MethodVisitor mv, FieldType type) {
             if (type instanceof BaseType) {
                 switch ((BaseType)type) {
@@ -2,57 +2,66 @@
 
 import static java.util.jar.Attributes.Name.MAIN_CLASS;
 
-import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.jar.Attributes;
 import java.util.stream.Collectors;
 
 import org.cadixdev.atlas.AtlasTransformerContext;
+import org.cadixdev.bombe.analysis.InheritanceProvider;
 import org.cadixdev.bombe.jar.AbstractJarEntry;
-import org.cadixdev.bombe.jar.JarClassEntry;
-import org.cadixdev.bombe.jar.JarEntryTransformer;
 import org.cadixdev.bombe.jar.JarManifestEntry;
 import org.cadixdev.bombe.jar.JarResourceEntry;
 import org.cadixdev.bombe.jar.JarServiceProviderConfigurationEntry;
 import org.cadixdev.bombe.jar.ServiceProviderConfiguration;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.asm.LorenzRemapper;
-import org.objectweb.asm.ClassReader;
+import org.minecraftplus.AbstractParameterNames;
+import org.minecraftplus.ClassStage;
+import org.minecraftplus.ParameterIndex;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.commons.ClassRemapper;
 import org.objectweb.asm.commons.Remapper;
 
-public class EnhancedRemappingTransformer implements JarEntryTransformer, ExtendedClassRemapper.AbstractConsumer {
+public class EnhancedRemappingTransformer implements ClassStage, ExtendedClassRemapper.AbstractConsumer {
     private final boolean makeFFMeta;
-    private final Set<String> abstractParams = ConcurrentHashMap.newKeySet();
+    private final AbstractParameterNames abstractParams = new AbstractParameterNames();
 
-    public EnhancedRemappingTransformer(MappingSet mappings, AtlasTransformerContext ctx, boolean makeFFMeta) {
+    public EnhancedRemappingTransformer(MappingSet mappings, ParameterIndex parameters, AtlasTransformerContext ctx, boolean makeFFMeta) {
+        this(mappings, parameters, ctx.inheritanceProvider(), makeFFMeta);
+    }
+
+    public EnhancedRemappingTransformer(MappingSet mappings, ParameterIndex parameters, InheritanceProvider inheritanceProvider, boolean makeFFMeta) {
+        this(new LorenzRemapper(mappings, inheritanceProvider), parameters, makeFFMeta);
+    }
+
+    public EnhancedRemappingTransformer(Remapper remapper, ParameterIndex parameters, boolean makeFFMeta) {
         this.makeFFMeta = makeFFMeta;
 
-        this.remapper = new LorenzRemapper(mappings, ctx.inheritanceProvider());
-        this.clsRemapper = (cv, remapper) -> new ExtendedClassRemapper(cv, remapper, mappings, ctx.inheritanceProvider(), this);
+        this.remapper = remapper;
+        // Abstract parameter names are only collected for the metadata file
+        this.clsRemapper = (cv, rm) -> new ExtendedClassRemapper(cv, rm, parameters, makeFFMeta ? this : null);
     }
 
     @Override
     public List<AbstractJarEntry> additions() {
         if (!makeFFMeta || abstractParams.isEmpty())
             return Collections.emptyList();
-        byte[] data = abstractParams.stream().sorted().collect(Collectors.joining("\n")).getBytes(StandardCharsets.UTF_8);
-        return Arrays.asList(new JarResourceEntry("fernflower_abstract_parameter_names.txt", 1, data));
+        return Arrays.asList(abstractParams.toEntry());
     }
 
     @Override
     public void storeNames(String className, String methodName, String methodDescriptor, Collection<String> paramNames) {
-        abstractParams.add(className + ' ' + methodName + ' ' + methodDescriptor + ' ' + paramNames.stream().collect(Collectors.joining(" ")));
+        abstractParams.add(className, methodName, methodDescriptor, paramNames);
+    }
+
+    public AbstractParameterNames getAbstractParameterNames() {
+        return abstractParams;
     }
 
 
@@ -64,19 +73,14 @@ public void storeNames(String className, String methodName, String methodDescrip
     private final Remapper remapper;
     private final BiFunction<ClassVisitor, Remapper, ClassRemapper> clsRemapper;
     @Override
-    public JarClassEntry transform(final JarClassEntry entry) {
+    public ClassVisitor createVisitor(final ClassVisitor parent) {
         // Remap the class
-        final ClassReader reader = new ClassReader(entry.getContents());
-        final ClassWriter writer = new ClassWriter(reader, 0);
-        reader.accept(this.clsRemapper.apply(
-                writer,
-                this.remapper
-        ), 0);
-
-        // Create the jar entry
-        final String originalName = entry.getName().substring(0, entry.getName().length() - ".class".length());
-        final String name = this.remapper.map(originalName) + ".class";
-        return new JarClassEntry(name, entry.getTime(), writer.toByteArray());
+        return this.clsRemapper.apply(parent, this.remapper);
+    }
+
+    @Override
+    public String mapClassName(final String name) {
+        return this.remapper.map(name);
     }
 
     @Override
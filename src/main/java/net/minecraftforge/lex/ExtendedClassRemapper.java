@@ -5,11 +5,9 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.cadixdev.bombe.analysis.InheritanceProvider;
-import org.cadixdev.bombe.type.signature.MethodSignature;
-import org.cadixdev.lorenz.MappingSet;
-import org.cadixdev.lorenz.model.ClassMapping;
-import org.cadixdev.lorenz.model.Mapping;
+import org.minecraftplus.ChangeTracking;
+import org.minecraftplus.ChangeTrackingRemapper;
+import org.minecraftplus.ParameterIndex;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
@@ -20,20 +18,29 @@
 import org.objectweb.asm.commons.MethodRemapper;
 import org.objectweb.asm.commons.Remapper;
 
-class ExtendedClassRemapper extends ClassRemapper {
+class ExtendedClassRemapper extends ClassRemapper implements ChangeTracking {
     interface AbstractConsumer {
         void storeNames(String className, String methodName, String methodDescriptor, Collection<String> paramNames);
     }
 
-    private final MappingSet mappings;
-    private final InheritanceProvider inheritanceProvider;
+    private final ParameterIndex parameters;
     private final AbstractConsumer abstractConsumer;
+    private final ChangeTrackingRemapper tracker;
 
-    ExtendedClassRemapper(ClassVisitor classVisitor, Remapper remapper, MappingSet mappings, InheritanceProvider inheritanceProvider, AbstractConsumer abstractConsumer) {
+    ExtendedClassRemapper(ClassVisitor classVisitor, Remapper remapper, ParameterIndex parameters, AbstractConsumer abstractConsumer) {
+        this(classVisitor, new ChangeTrackingRemapper(remapper), parameters, abstractConsumer);
+    }
+
+    private ExtendedClassRemapper(ClassVisitor classVisitor, ChangeTrackingRemapper remapper, ParameterIndex parameters, AbstractConsumer abstractConsumer) {
         super(classVisitor, remapper);
-        this.mappings = mappings;
-        this.inheritanceProvider = inheritanceProvider;
+        this.parameters = parameters;
         this.abstractConsumer = abstractConsumer;
+        this.tracker = remapper;
+    }
+
+    @Override
+    public boolean hasChanged() {
+        return tracker.hasChanged();
     }
 
 
@@ -48,13 +55,14 @@ public MethodVisitor visitMethod(final int access, final String mname, final Str
         if (methodVisitor == null)
             return null;
 
-        if ((access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0)
-            renameAbstract(access, mname, mdescriptor);
+        final String[] params = parameters.getParameters(className, mname, mdescriptor);
+        if (abstractConsumer != null && (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0)
+            renameAbstract(access, mname, mdescriptor, params);
 
         return new MethodRemapper(methodVisitor, remapper) {
             @Override
             public void visitLocalVariable(final String pname, final String pdescriptor, final String psignature, final Label start, final Label end, final int index) {
-                super.visitLocalVariable(renameSnowmen(mapParameterName(className, mname, mdescriptor, index, pname), index), pdescriptor, psignature, start, end, index);
+                super.visitLocalVariable(tracker.track(pname, renameSnowmen(mapParameterName(params, index, pname), index)), pdescriptor, psignature, start, end, index);
             }
 
             // Snowmen, added in 1.8.2? rename them names that can exist in source
@@ -94,21 +102,12 @@ public void visitInvokeDynamicInsn(final String name, final String descriptor, f
         };
     }
 
-    private ClassMapping<?, ?> getCompletedClassMapping(final String owner) {
-        final ClassMapping<?, ?> mapping = this.mappings.getOrCreateClassMapping(owner);
-        mapping.complete(this.inheritanceProvider);
-        return mapping;
-    }
-
-    public String mapParameterName(final String owner, final String methodName, final String methodDescriptor, final int index, final String paramName) {
-        return this.getCompletedClassMapping(owner)
-                .getMethodMapping(MethodSignature.of(methodName, methodDescriptor))
-                .flatMap(m -> m.getParameterMapping(index))
-                .map(Mapping::getDeobfuscatedName)
-                .orElse(paramName);
+    private static String mapParameterName(final String[] params, final int index, final String paramName) {
+        final String mapped = ParameterIndex.getParameter(params, index);
+        return mapped == null ? paramName : mapped;
     }
 
-    private void renameAbstract(int access, String name, String descriptor) {
+    private void renameAbstract(int access, String name, String descriptor, String[] params) {
         Type[] types = Type.getArgumentTypes(descriptor);
         if (types.length == 0)
             return;
@@ -116,7 +115,7 @@ private void renameAbstract(int access, String name, String descriptor) {
         List<String> names = new ArrayList<>();
         int i = (access & Opcodes.ACC_STATIC) == 0 ? 1 : 0;
         for (Type type : types) {
-            names.add(mapParameterName(className, name, descriptor, i, "var" + i));
+            names.add(mapParameterName(params, i, "var" + i));
             i += type.getSize();
         }
 
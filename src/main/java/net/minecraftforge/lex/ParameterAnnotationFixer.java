@@ -2,58 +2,164 @@
 
 import static org.objectweb.asm.Opcodes.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import org.cadixdev.bombe.jar.JarClassEntry;
-import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.minecraftplus.ChangeTracking;
+import org.minecraftplus.ClassStage;
+import org.minecraftplus.Log;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AnnotationNode;
-import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.InnerClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
-public class ParameterAnnotationFixer implements JarEntryTransformer {
+public class ParameterAnnotationFixer implements ClassStage {
+    private final Log log;
+
+    public ParameterAnnotationFixer() {
+        this(Log.none());
+    }
+
+    public ParameterAnnotationFixer(Log log) {
+        this.log = log;
+    }
+
     @Override
-    public JarClassEntry transform(final JarClassEntry entry) {
-        final ClassReader reader = new ClassReader(entry.getContents());
-        final ClassWriter writer = new ClassWriter(reader, 0);
-        final ClassNode node = new ClassNode();
-        reader.accept(new Visitor(node), 0);
-        node.accept(writer);
-        return new JarClassEntry(entry.getName(), entry.getTime(), writer.toByteArray());
+    public ClassVisitor createVisitor(final ClassVisitor parent) {
+        return new Visitor(parent, log.buffer());
     }
 
-    private static class Visitor extends ClassVisitor {
-        private final ClassNode node;
+    /**
+     * Scans the raw class for what {@link Visitor} needs to fix anything: the
+     * class is an enum or a named, non-static inner class, and a constructor has
+     * parameter annotations. Neither changes with remapping, so the input bytes
+     * decide for the whole chain.
+     */
+    @Override
+    public boolean isCandidate(ClassReader reader) {
+        char[] buf = new char[reader.getMaxStringLength()];
+        int offset = reader.header + 6;
+        offset += 2 + 2 * reader.readUnsignedShort(offset); // Interfaces
+
+        int fields = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < fields; i++)
+            offset = skipMember(reader, offset);
+
+        boolean annotated = false;
+        int methods = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < methods; i++) {
+            if (!annotated && "<init>".equals(reader.readUTF8(offset + 2, buf))) {
+                int attributes = reader.readUnsignedShort(offset + 6);
+                for (int j = 0, attr = offset + 8; j < attributes; j++, attr += 6 + reader.readInt(attr + 2)) {
+                    String name = reader.readUTF8(attr, buf);
+                    if ("RuntimeVisibleParameterAnnotations".equals(name) || "RuntimeInvisibleParameterAnnotations".equals(name))
+                        annotated = true;
+                }
+            }
+            offset = skipMember(reader, offset);
+        }
+        if (!annotated)
+            return false;
+        if ((reader.getAccess() & ACC_ENUM) != 0)
+            return true;
 
-        public Visitor(ClassNode cn) {
-            super(Opcodes.ASM9, cn);
-            this.node = cn;
+        String className = reader.getClassName();
+        int attributes = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < attributes; i++, offset += 6 + reader.readInt(offset + 2)) {
+            if (!"InnerClasses".equals(reader.readUTF8(offset, buf)))
+                continue;
+            int classes = reader.readUnsignedShort(offset + 6);
+            for (int j = 0, entry = offset + 8; j < classes; j++, entry += 8) {
+                if (className.equals(reader.readClass(entry, buf)))
+                    return (reader.readUnsignedShort(entry + 6) & (ACC_STATIC | ACC_INTERFACE)) == 0 && reader.readUnsignedShort(entry + 4) != 0;
+            }
+        }
+        return false;
+    }
+
+    private static int skipMember(ClassReader reader, int offset) {
+        int attributes = reader.readUnsignedShort(offset + 6);
+        offset += 8;
+        for (int i = 0; i < attributes; i++)
+            offset += 6 + reader.readInt(offset + 2);
+        return offset;
+    }
+
+    /**
+     * Passes the class through, only holding back the constructors of classes
+     * which can have synthetic parameters, to fix them once they are complete.
+     */
+    private static class Visitor extends ClassVisitor implements ChangeTracking {
+        private final Log.Buffer messages;
+        private String name;
+        private int access;
+        private final List<InnerClassNode> innerClasses = new ArrayList<>();
+        private boolean checked;
+        private Type[] syntheticParams;
+        private boolean changed;
+
+        public Visitor(ClassVisitor parent, Log.Buffer messages) {
+            super(Opcodes.ASM9, parent);
+            this.messages = messages;
         }
 
         private void debug(String message) {
-            //System.out.println(message);
+            messages.debug(message);
         }
 
         private void log(String message) {
-            System.out.println(message);
+            messages.info(message);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.name = name;
+            this.access = access;
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            innerClasses.add(new InnerClassNode(name, outerName, innerName, access));
+            super.visitInnerClass(name, outerName, innerName, access);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            MethodVisitor parent = super.visitMethod(access, name, descriptor, signature, exceptions);
+            // Inner classes are visited before any method
+            if (!checked) {
+                syntheticParams = getExpectedSyntheticParams();
+                checked = true;
+            }
+            if (parent == null || syntheticParams == null || !name.equals("<init>"))
+                return parent;
+
+            return new MethodNode(Opcodes.ASM9, access, name, descriptor, signature, exceptions) {
+                @Override
+                public void visitEnd() {
+                    processConstructor(this, syntheticParams);
+                    accept(parent);
+                }
+            };
         }
 
         @Override
         public void visitEnd() {
+            messages.flush();
             super.visitEnd();
+        }
 
-            Type[] syntheticParams = getExpectedSyntheticParams(node);
-            if (syntheticParams != null) {
-                for (MethodNode mn : node.methods) {
-                    if (mn.name.equals("<init>"))
-                        processConstructor(node, mn, syntheticParams);
-                }
-            }
+        @Override
+        public boolean hasChanged() {
+            return changed;
         }
 
         /**
@@ -69,39 +175,39 @@ public void visitEnd() {
         * @return An array of types for synthetic parameters if the class can have
         *         synthetic parameters, otherwise null.
         */
-        private Type[] getExpectedSyntheticParams(ClassNode cls) {
+        private Type[] getExpectedSyntheticParams() {
             // Check for enum
             // http://hg.openjdk.java.net/jdk8/jdk8/langtools/file/1ff9d5118aae/src/share/classes/com/sun/tools/javac/comp/Lower.java#l2866
-            if ((cls.access & ACC_ENUM) != 0) {
-                debug("  Considering " + cls.name + " for extra parameter annotations as it is an enum");
+            if ((access & ACC_ENUM) != 0) {
+                debug("  Considering " + name + " for extra parameter annotations as it is an enum");
                 return new Type[] { Type.getObjectType("java/lang/String"), Type.INT_TYPE };
             }
 
             // Check for inner class
             InnerClassNode info = null;
-            for (InnerClassNode node : cls.innerClasses) { // note: cls.innerClasses is never null
-                if (node.name.equals(cls.name)) {
+            for (InnerClassNode node : innerClasses) {
+                if (node.name.equals(name)) {
                     info = node;
                     break;
                 }
             }
             // http://hg.openjdk.java.net/jdk8/jdk8/langtools/file/1ff9d5118aae/src/share/classes/com/sun/tools/javac/code/Symbol.java#l398
             if (info == null) {
-                debug("  Not considering " + cls.name + " for extra parameter annotations as it is not an inner class");
+                debug("  Not considering " + name + " for extra parameter annotations as it is not an inner class");
                 return null; // It's not an inner class
             }
             if ((info.access & (ACC_STATIC | ACC_INTERFACE)) != 0) {
-                debug("  Not considering " + cls.name + " for extra parameter annotations as is an interface or static");
+                debug("  Not considering " + name + " for extra parameter annotations as is an interface or static");
                 return null; // It's static or can't have a constructor
             }
 
             // http://hg.openjdk.java.net/jdk8/jdk8/langtools/file/1ff9d5118aae/src/share/classes/com/sun/tools/javac/jvm/ClassReader.java#l2011
             if (info.innerName == null) {
-                debug("  Not considering " + cls.name + " for extra parameter annotations as it is annonymous");
+                debug("  Not considering " + name + " for extra parameter annotations as it is annonymous");
                 return null; // It's an anonymous class
             }
 
-            debug("  Considering " + cls.name + " for extra parameter annotations as it is an inner class of " + info.outerName);
+            debug("  Considering " + name + " for extra parameter annotations as it is an inner class of " + info.outerName);
             return new Type[] { Type.getObjectType(info.outerName) };
         }
 
@@ -109,8 +215,8 @@ private Type[] getExpectedSyntheticParams(ClassNode cls) {
         * Removes the parameter annotations for the given synthetic parameters,
         * if there are parameter annotations and the synthetic parameters exist.
         */
-        private void processConstructor(ClassNode cls, MethodNode mn, Type[] syntheticParams) {
-            String methodInfo = mn.name + mn.desc + " in " + cls.name;
+        private void processConstructor(MethodNode mn, Type[] syntheticParams) {
+            String methodInfo = mn.name + mn.desc + " in " + name;
             Type[] params = Type.getArgumentTypes(mn.desc);
 
             if (beginsWith(params, syntheticParams)) {
@@ -161,6 +267,7 @@ private List<AnnotationNode>[] process(String methodInfo, String attributeName,
             int numAnnotations = annotations.length;
             if (numParams == numAnnotations) {
                 log("Found extra " + attributeName + " entries in " + methodInfo + ": removing " + numSynthetic);
+                changed = true;
                 return Arrays.copyOfRange(annotations, numSynthetic, numAnnotations);
             } else if (numParams == numAnnotations - numSynthetic) {
                 debug("Number of " + attributeName + " entries in " + methodInfo + " is already as we want");
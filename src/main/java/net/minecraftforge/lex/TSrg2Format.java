@@ -1,95 +1,104 @@
 package net.minecraftforge.lex;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Optional;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.io.MappingsReader;
 import org.cadixdev.lorenz.io.MappingsWriter;
 import org.cadixdev.lorenz.io.TextMappingFormat;
-import org.cadixdev.lorenz.io.TextMappingsReader;
-import org.cadixdev.lorenz.io.srg.SrgConstants;
 import org.cadixdev.lorenz.model.ClassMapping;
 import org.cadixdev.lorenz.model.MethodMapping;
-import org.objectweb.asm.Type;
 
 public class TSrg2Format implements TextMappingFormat {
-    @Override public MappingsReader createReader(final Reader reader) { return new TSrg2Reader(reader); }
+    @Override public MappingsReader createReader(final Reader reader) { return new TSrg2Reader(reader, null); }
+    @Override public MappingsReader createReader(final InputStream stream) { return new TSrg2Reader(null, stream); }
     @Override public MappingsWriter createWriter(final Writer writer) { throw new UnsupportedOperationException("No writing TSRGv2"); }
     @Override public Optional<String> getStandardFileExtension() { return Optional.empty(); }
     @Override public String toString() { return "tsrg2"; }
 
-    private static class TSrg2Reader extends TextMappingsReader {
+    @Override
+    public MappingSet read(final MappingSet mappings, final Path path) throws IOException {
+        TSrg2Parser.parse(Files.readAllBytes(path), new Processor(mappings));
+        return mappings;
+    }
 
-        protected TSrg2Reader(Reader reader) {
-            super(reader, TSrg2Reader.Processor::new);
-        }
+    private static class TSrg2Reader extends MappingsReader {
+        private final Reader reader;
+        private final InputStream stream;
 
-        @SuppressWarnings("rawtypes")
-        private static class Processor extends TextMappingsReader.Processor {
-            private int nameCount = 0;
-            private ClassMapping cls;
-            private MethodMapping mtd;
-            private int[] pidx;
+        protected TSrg2Reader(Reader reader, InputStream stream) {
+            this.reader = reader;
+            this.stream = stream;
+        }
 
-            protected Processor(MappingSet mappings) {
-                super(mappings);
+        @Override
+        public MappingSet read(final MappingSet mappings) throws IOException {
+            final byte[] data;
+            if (this.stream != null) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buf = new byte[1 << 16];
+                for (int len; (len = this.stream.read(buf)) != -1;)
+                    out.write(buf, 0, len);
+                data = out.toByteArray();
+            } else {
+                final StringBuilder text = new StringBuilder();
+                final char[] buf = new char[1 << 16];
+                for (int len; (len = this.reader.read(buf)) != -1;)
+                    text.append(buf, 0, len);
+                data = text.toString().getBytes(StandardCharsets.UTF_8);
             }
+            TSrg2Parser.parse(data, new Processor(mappings));
+            return mappings;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.stream != null)
+                this.stream.close();
+            else
+                this.reader.close();
+        }
+    }
 
-            @Override
-            public void accept(String raw) {
-                final String line = SrgConstants.removeComments(raw);
-                if (line.isEmpty()) return;
+    @SuppressWarnings("rawtypes")
+    private static class Processor implements TSrg2Parser.Sink {
+        private final MappingSet mappings;
+        private ClassMapping cls;
+        private MethodMapping mtd;
 
-                if (line.startsWith("tsrg2 ")) {
-                    nameCount = line.split(" ").length - 1;
-                    return;
-                }
+        protected Processor(MappingSet mappings) {
+            this.mappings = mappings;
+        }
 
-                String[] pts = line.split(" ");
-                if (pts[0].charAt(0) != '\t') {
-                    if (pts.length != nameCount) error(line);
+        @Override
+        public void visitClass(String obf, String deobf) {
+            this.cls = this.mappings.getOrCreateClassMapping(obf);
+            this.cls.setDeobfuscatedName(deobf);
+        }
 
-                    if (pts[0].charAt(pts[0].length() - 1) != '/') {
-                        this.cls = this.mappings.getOrCreateClassMapping(pts[0]);
-                        this.cls.setDeobfuscatedName(pts[1]);
-                    }
-                } else if (pts[0].charAt(1) == '\t') {
-                    if (mtd == null) error(line);
-                    pts[0] = pts[0].substring(2);
-                    if (pts.length == 1 && "static".equals(pts[0]))
-                        for (int x = 0; x < pidx.length; x++)
-                            pidx[x]--;
-                    else if (pts.length == nameCount + 1)
-                        mtd.getOrCreateParameterMapping(pidx[Integer.parseInt(pts[0])]).setDeobfuscatedName(pts[2]);
-                    else
-                        error(line);
-                } else {
-                    if (cls == null) error(line);
-                    pts[0] = pts[0].substring(1);
-                    if (pts.length == nameCount)
-                        cls.getOrCreateFieldMapping(pts[0]).setDeobfuscatedName(pts[1]);
-                    else if (pts.length == nameCount + 1) {
-                        if (pts[1].charAt(0) == '(') {
-                            mtd = cls.getOrCreateMethodMapping(pts[0], pts[1]).setDeobfuscatedName(pts[2]);
-                            Type[] args = Type.getArgumentTypes(pts[1]);
-                            pidx = new int[args.length];
-                            int i = 1;
-                            for (int x = 0; x < args.length; x++) {
-                                pidx[x] = i;
-                                i += args[x].getSize();
-                            }
-                        } else {
-                            mtd = null;
-                            pidx = null;
-                            cls.getOrCreateFieldMapping(pts[0], pts[1]).setDeobfuscatedName(pts[2]);
-                        }
-                    }
-                }
+        @Override
+        public void visitField(String obf, String descriptor, String deobf) {
+            if (descriptor == null)
+                cls.getOrCreateFieldMapping(obf).setDeobfuscatedName(deobf);
+            else
+                cls.getOrCreateFieldMapping(obf, descriptor).setDeobfuscatedName(deobf);
+        }
 
-            }
+        @Override
+        public void visitMethod(String obf, String descriptor, String deobf) {
+            mtd = cls.getOrCreateMethodMapping(obf, descriptor).setDeobfuscatedName(deobf);
+        }
 
-            private void error(String line) { throw new IllegalArgumentException("Failed to process line: `" + line + "`!"); }
+        @Override
+        public void visitParameter(int index, String deobf) {
+            mtd.getOrCreateParameterMapping(index).setDeobfuscatedName(deobf);
         }
     }
 }
@@ -0,0 +1,361 @@
+package net.minecraftforge.lex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parses tsrg2 mappings from their UTF-8 bytes.
+ * <p>
+ * Lines are tokenized in place, only the names handed to the {@link Sink} are
+ * turned into strings. The input is split into chunks at top level class lines,
+ * the chunks are parsed in parallel and their results are handed to the sink
+ * in order, on the calling thread.
+ */
+public final class TSrg2Parser {
+    /**
+     * Receives the parsed mappings, in the order they appear in the input.
+     */
+    public interface Sink {
+        void visitClass(String obf, String deobf);
+        /**
+         * @param descriptor the obfuscated descriptor, or {@code null} if the field has none
+         */
+        void visitField(String obf, String descriptor, String deobf);
+        void visitMethod(String obf, String descriptor, String deobf);
+        /**
+         * A parameter of the last visited method.
+         *
+         * @param index the LVT index of the parameter
+         */
+        void visitParameter(int index, String deobf);
+    }
+
+    private static final int MIN_CHUNK = 1 << 18;
+    private static final byte[] HEADER = "tsrg2 ".getBytes(StandardCharsets.US_ASCII);
+
+    private TSrg2Parser() {
+    }
+
+    public static void parse(final byte[] data, final Sink sink) {
+        final int[] bounds = split(data);
+        final Chunk[] chunks = new Chunk[bounds.length - 1];
+        for (int i = 0; i < chunks.length; i++)
+            chunks[i] = new Chunk(data, bounds[i], bounds[i + 1]);
+
+        // Header lines set the name count of every following line, so they are found first
+        if (chunks.length == 1) {
+            chunks[0].nameCount = 0;
+            chunks[0].run();
+        } else {
+            Arrays.stream(chunks).parallel().forEach(Chunk::findHeaders);
+            int nameCount = 0;
+            for (Chunk chunk : chunks) {
+                chunk.nameCount = nameCount;
+                if (chunk.lastHeader != -1)
+                    nameCount = chunk.lastHeader;
+            }
+            Arrays.stream(chunks).parallel().forEach(Chunk::run);
+        }
+
+        for (Chunk chunk : chunks)
+            chunk.replay(sink);
+    }
+
+    /**
+     * Splits the input into chunks, every chunk but the first starting with a class line.
+     */
+    private static int[] split(final byte[] data) {
+        final int parts = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, data.length / MIN_CHUNK));
+        final List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        for (int i = 1; i < parts; i++) {
+            int pos = Math.max(bounds.get(bounds.size() - 1), (int) ((long) data.length * i / parts));
+            // Move to the start of the next line, then on to the next class line
+            while (pos < data.length && (pos == 0 || data[pos - 1] != '\n'))
+                pos++;
+            while (pos < data.length && !isClassLine(data, pos))
+                pos = nextLine(data, pos);
+            if (pos >= data.length)
+                break;
+            if (pos > bounds.get(bounds.size() - 1))
+                bounds.add(pos);
+        }
+        bounds.add(data.length);
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int nextLine(final byte[] data, int pos) {
+        while (pos < data.length && data[pos] != '\n')
+            pos++;
+        return pos + 1;
+    }
+
+    /**
+     * Whether the line at the given position names a class, rather than a package or being a header, member or comment.
+     */
+    private static boolean isClassLine(final byte[] data, final int pos) {
+        final byte first = data[pos];
+        if (first == '\t' || first == '\n' || first == '\r' || first == ' ' || first == '#' || startsWith(data, pos, HEADER))
+            return false;
+        int end = pos;
+        while (end < data.length && data[end] != ' ' && data[end] != '\n' && data[end] != '\r' && data[end] != '#')
+            end++;
+        return data[end - 1] != '/';
+    }
+
+    private static boolean startsWith(final byte[] data, final int pos, final byte[] prefix) {
+        if (pos + prefix.length > data.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[pos + i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static final class Chunk {
+        private static final byte CLASS = 0, FIELD = 1, METHOD = 2, PARAMETER = 3;
+
+        private final byte[] data;
+        private final int start, end;
+        private int nameCount;
+        private int lastHeader = -1;
+
+        // Start and end of every token of the current line
+        private int[] tokens = new int[16];
+
+        // Parsed events, replayed to the sink
+        private byte[] kinds = new byte[64];
+        private String[] strings = new String[64 * 3];
+        private int[] indices = new int[64];
+        private int size;
+        private RuntimeException error;
+
+        Chunk(final byte[] data, final int start, final int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+        }
+
+        void findHeaders() {
+            for (int pos = this.start; pos < this.end; pos = nextLine(this.data, pos)) {
+                if (startsWith(this.data, pos, HEADER)) {
+                    final int lineEnd = this.lineEnd(pos);
+                    this.lastHeader = this.tokenize(pos, lineEnd) - 1;
+                }
+            }
+        }
+
+        void run() {
+            try {
+                this.parse();
+            } catch (RuntimeException ex) {
+                // Thrown once the chunks before have been replayed
+                this.error = ex;
+            }
+        }
+
+        private void parse() {
+            boolean hasClass = false;
+            boolean hasMethod = false;
+            int[] pidx = null;
+
+            for (int pos = this.start; pos < this.end; pos = nextLine(this.data, pos)) {
+                final int lineEnd = this.lineEnd(pos);
+                if (lineEnd == pos)
+                    continue;
+
+                final int count = this.tokenize(pos, lineEnd);
+                if (count == 0)
+                    continue;
+
+                if (startsWith(this.data, pos, HEADER)) {
+                    this.nameCount = count - 1;
+                    continue;
+                }
+
+                final byte[] d = this.data;
+                if (d[pos] != '\t') {
+                    if (count != this.nameCount || count < 2 || this.tokens[1] == pos) throw this.error(pos, lineEnd);
+
+                    if (d[this.tokens[1] - 1] != '/') {
+                        this.add(CLASS, this.string(0, 0), this.string(1, 0), null, 0);
+                        hasClass = true;
+                        hasMethod = false;
+                        pidx = null;
+                    }
+                } else if (pos + 1 < lineEnd && d[pos + 1] == '\t') {
+                    if (!hasMethod) throw this.error(pos, lineEnd);
+                    if (count == 1 && this.tokenEquals(0, 2, "static")) {
+                        for (int x = 0; x < pidx.length; x++)
+                            pidx[x]--;
+                    } else if (count == this.nameCount + 1 && count >= 3) {
+                        this.add(PARAMETER, this.string(2, 0), null, null, pidx[this.parseInt(0, 2)]);
+                    } else {
+                        throw this.error(pos, lineEnd);
+                    }
+                } else {
+                    if (!hasClass) throw this.error(pos, lineEnd);
+                    if (count == this.nameCount && count >= 2) {
+                        this.add(FIELD, this.string(0, 1), null, this.string(1, 0), 0);
+                    } else if (count == this.nameCount + 1 && count >= 3) {
+                        if (this.tokens[2] == this.tokens[3]) throw this.error(pos, lineEnd);
+                        if (d[this.tokens[2]] == '(') {
+                            this.add(METHOD, this.string(0, 1), this.string(1, 0), this.string(2, 0), 0);
+                            pidx = this.parameterIndices(this.tokens[2], this.tokens[3], pos, lineEnd);
+                            hasMethod = true;
+                        } else {
+                            hasMethod = false;
+                            pidx = null;
+                            this.add(FIELD, this.string(0, 1), this.string(1, 0), this.string(2, 0), 0);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Gets the end of the line at the given position, without the line break and comments.
+         */
+        private int lineEnd(final int pos) {
+            int end = pos;
+            while (end < this.end && this.data[end] != '\n' && this.data[end] != '#')
+                end++;
+            if (end < this.end && this.data[end] == '#') {
+                while (end > pos && (this.data[end - 1] == ' ' || this.data[end - 1] == '\t'))
+                    end--;
+            }
+            else if (end > pos && this.data[end - 1] == '\r') {
+                end--;
+            }
+            return end;
+        }
+
+        /**
+         * Finds the tokens of the line, separated by single spaces like {@link String#split(String)}:
+         * trailing empty tokens are dropped.
+         */
+        private int tokenize(final int pos, final int lineEnd) {
+            int count = 0;
+            int tokenStart = pos;
+            for (int i = pos; i <= lineEnd; i++) {
+                if (i == lineEnd || this.data[i] == ' ') {
+                    if (count * 2 + 2 > this.tokens.length)
+                        this.tokens = Arrays.copyOf(this.tokens, this.tokens.length * 2);
+                    this.tokens[count * 2] = tokenStart;
+                    this.tokens[count * 2 + 1] = i;
+                    count++;
+                    tokenStart = i + 1;
+                }
+            }
+            while (count > 0 && this.tokens[count * 2 - 2] == this.tokens[count * 2 - 1])
+                count--;
+            return count;
+        }
+
+        private String string(final int token, final int skip) {
+            final int from = this.tokens[token * 2] + skip;
+            return new String(this.data, from, this.tokens[token * 2 + 1] - from, StandardCharsets.UTF_8);
+        }
+
+        private boolean tokenEquals(final int token, final int skip, final String value) {
+            final int from = this.tokens[token * 2] + skip;
+            if (this.tokens[token * 2 + 1] - from != value.length())
+                return false;
+            for (int i = 0; i < value.length(); i++) {
+                if (this.data[from + i] != value.charAt(i))
+                    return false;
+            }
+            return true;
+        }
+
+        private int parseInt(final int token, final int skip) {
+            final int from = this.tokens[token * 2] + skip;
+            final int to = this.tokens[token * 2 + 1];
+            if (from == to)
+                throw new NumberFormatException("For input string: \"\"");
+            int ret = 0;
+            for (int i = from; i < to; i++) {
+                final int digit = this.data[i] - '0';
+                if (digit < 0 || digit > 9)
+                    throw new NumberFormatException("For input string: \"" + this.string(token, skip) + "\"");
+                ret = ret * 10 + digit;
+            }
+            return ret;
+        }
+
+        /**
+         * Gets the LVT index of every parameter of the descriptor, as if the method was not static.
+         */
+        private int[] parameterIndices(final int from, final int to, final int pos, final int lineEnd) {
+            final byte[] d = this.data;
+            int[] ret = new int[8];
+            int count = 0;
+            int index = 1;
+            int p = from + 1;
+            while (p < to && d[p] != ')') {
+                if (count == ret.length)
+                    ret = Arrays.copyOf(ret, count * 2);
+                ret[count++] = index;
+
+                final int argStart = p;
+                while (p < to && d[p] == '[')
+                    p++;
+                if (p >= to)
+                    throw this.error(pos, lineEnd);
+                if (d[p] == 'L') {
+                    while (p < to && d[p] != ';')
+                        p++;
+                    if (p >= to)
+                        throw this.error(pos, lineEnd);
+                }
+                index += p == argStart && (d[p] == 'J' || d[p] == 'D') ? 2 : 1;
+                p++;
+            }
+            return count == ret.length ? ret : Arrays.copyOf(ret, count);
+        }
+
+        private void add(final byte kind, final String a, final String b, final String c, final int index) {
+            if (this.size == this.kinds.length) {
+                this.kinds = Arrays.copyOf(this.kinds, this.size * 2);
+                this.strings = Arrays.copyOf(this.strings, this.size * 2 * 3);
+                this.indices = Arrays.copyOf(this.indices, this.size * 2);
+            }
+            this.kinds[this.size] = kind;
+            this.strings[this.size * 3] = a;
+            this.strings[this.size * 3 + 1] = b;
+            this.strings[this.size * 3 + 2] = c;
+            this.indices[this.size] = index;
+            this.size++;
+        }
+
+        void replay(final Sink sink) {
+            final String[] s = this.strings;
+            for (int i = 0; i < this.size; i++) {
+                switch (this.kinds[i]) {
+                    case CLASS:
+                        sink.visitClass(s[i * 3], s[i * 3 + 1]);
+                        break;
+                    case FIELD:
+                        sink.visitField(s[i * 3], s[i * 3 + 1], s[i * 3 + 2]);
+                        break;
+                    case METHOD:
+                        sink.visitMethod(s[i * 3], s[i * 3 + 1], s[i * 3 + 2]);
+                        break;
+                    default:
+                        sink.visitParameter(this.indices[i], s[i * 3]);
+                        break;
+                }
+            }
+            if (this.error != null)
+                throw this.error;
+        }
+
+        private IllegalArgumentException error(final int pos, final int lineEnd) {
+            return new IllegalArgumentException("Failed to process line: `" + new String(this.data, pos, lineEnd - pos, StandardCharsets.UTF_8) + "`!");
+        }
+    }
+}
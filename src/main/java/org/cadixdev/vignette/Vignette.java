@@ -0,0 +1,870 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette;
+
+import net.minecraftforge.lex.ConstructorInjector;
+import net.minecraftforge.lex.EnhancedRemappingTransformer;
+import net.minecraftforge.lex.ParameterAnnotationFixer;
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.asm.LorenzRemapper;
+import org.cadixdev.lorenz.io.MappingFormat;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.vignette.cache.ClassCache;
+import org.cadixdev.vignette.cache.ClassSignatures;
+import org.cadixdev.vignette.cache.Fingerprint;
+import org.cadixdev.vignette.cache.LibraryIndex;
+import org.cadixdev.vignette.cache.MappingCache;
+import org.cadixdev.vignette.jar.CollectingTransformer;
+import org.cadixdev.vignette.jar.JarInheritanceProvider;
+import org.cadixdev.vignette.jar.JarReader;
+import org.cadixdev.vignette.jar.JarWriter;
+import org.cadixdev.vignette.jar.NestedJarTransformer;
+import org.cadixdev.vignette.report.Report;
+import org.cadixdev.vignette.util.SharedExecutorService;
+import org.minecraftplus.AbstractParameterNames;
+import org.minecraftplus.ClassStage;
+import org.minecraftplus.ClassStageChain;
+import org.minecraftplus.CompactMappings;
+import org.minecraftplus.CompactRemapper;
+import org.minecraftplus.EnhancedDeducingRemappingTransformer;
+import org.minecraftplus.Log;
+import org.minecraftplus.MappingCompleter;
+import org.minecraftplus.ParameterIndex;
+import org.minecraftplus.jfr.Jfr;
+import org.minecraftplus.jfr.MappingLoadEvent;
+import org.minecraftplus.jfr.OutputWriteEvent;
+import org.minecraftplus.srgprocessor.Dictionary;
+import org.objectweb.asm.commons.Remapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * The remapping engine behind Vignette, which can be embedded and called any
+ * number of times.
+ * <p>
+ * An engine is created by a {@link Builder}, which reads the mappings,
+ * dictionaries and, with a cache, the library indexes once. Every call of
+ * {@link #remap(Path, Path)} reuses them.
+ */
+public final class Vignette {
+
+    private final MappingSet mappings;
+    private final CompactMappings compactMappings;
+    private final byte[] mappingsHash;
+    private final boolean copyMappings;
+    private final List<Path> libraryJars;
+    private final List<LibraryIndex> libraries;
+    private final Set<Dictionary> dictionaries;
+    private final List<byte[]> dictionaryHashes;
+    private final boolean deduceParameterNames;
+    private final boolean fernflowerMeta;
+    private final boolean createInits;
+    private final boolean fixParameterAnnotations;
+    private final int threads;
+    private final boolean stable;
+    private final int compressionMethod;
+    private final int compressionLevel;
+    private final Path cache;
+    private final boolean nestedJars;
+    private final Report report;
+    private final Log log;
+
+    private Vignette(final Builder builder, final MappingSet mappings, final CompactMappings compactMappings, final byte[] mappingsHash,
+                     final List<Path> libraryJars, final List<LibraryIndex> libraries, final Set<Dictionary> dictionaries,
+                     final List<byte[]> dictionaryHashes) {
+        this.mappings = mappings;
+        this.compactMappings = compactMappings;
+        this.mappingsHash = mappingsHash;
+        this.copyMappings = builder.copyMappings;
+        this.libraryJars = libraryJars;
+        this.libraries = libraries;
+        this.dictionaries = dictionaries;
+        this.dictionaryHashes = dictionaryHashes;
+        this.deduceParameterNames = builder.deduceParameterNames;
+        this.fernflowerMeta = builder.fernflowerMeta;
+        this.createInits = builder.createInits;
+        this.fixParameterAnnotations = builder.fixParameterAnnotations;
+        this.threads = builder.threads;
+        this.stable = builder.stable;
+        this.compressionMethod = builder.store ? ZipEntry.STORED : ZipEntry.DEFLATED;
+        this.compressionLevel = builder.compressionLevel;
+        this.cache = builder.cache;
+        this.nestedJars = builder.nestedJars;
+        this.report = builder.report;
+        this.log = builder.log;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Remaps the given jar, may be called from multiple threads when the
+     * mappings are copied for every call or are {@link CompactMappings}.
+     *
+     * @param input the jar to remap
+     * @param output the jar to write
+     * @return the statistics of the run
+     */
+    public Result remap(final Path input, final Path output) throws IOException {
+        // Completion adds the members inherited by the classes of this jar, compact mappings are never changed
+        final MappingSet mappings = this.mappings == null ? null : this.copyMappings ? this.mappings.copy() : this.mappings;
+        try (JarReader jar = JarReader.open(input)) {
+            if (!this.nestedJars)
+                return this.remap(jar, output, mappings, null, this.report);
+
+            // Nested jars are remapped by the workers of their outer jar, waiting workers run queued tasks
+            final ForkJoinPool pool = this.createPool();
+            try {
+                return this.remap(jar, output, mappings, new SharedExecutorService(pool), this.report);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private int getParallelism() {
+        return this.threads > 0 ? this.threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Creates the pool of workers transforming the entries. Idle workers steal queued
+     * entries from busy ones, every queue running its entries in the order they were
+     * submitted.
+     */
+    private ForkJoinPool createPool() {
+        return new ForkJoinPool(this.getParallelism(), ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    /**
+     * @param mappings the mappings of this run, or {@code null} to use the compact mappings
+     * @param executor the executor shared with nested jars, or {@code null} to use one of this run only
+     * @param report the report to time the phases in, only given for the outer jar
+     */
+    private Result remap(final JarReader input, final Path output, final MappingSet mappings, final ExecutorService executor,
+                         final Report report) throws IOException {
+        final long start = System.nanoTime();
+        final AtomicInteger nestedJars = new AtomicInteger();
+        Report.Phase phase = report == null ? null : report.start("analysis");
+
+        // The output is compressed and spooled on the worker threads and written by us
+        final JarWriter writer = new JarWriter(this.stable, this.compressionMethod, this.compressionLevel);
+        final ExecutorService workers = executor != null ? executor : this.createPool();
+        final List<JarReader> libraryJars = new ArrayList<>(this.libraryJars.size());
+        try {
+            for (Path lib : this.libraryJars)
+                libraryJars.add(JarReader.open(lib));
+
+            // Classes whose inputs are unchanged since an earlier run are taken from the cache
+            final byte[] fingerprint;
+            if (this.cache != null) {
+                final Fingerprint fp = new Fingerprint()
+                        .add(String.valueOf(Vignette.class.getPackage().getImplementationVersion()))
+                        .add(this.mappingsHash);
+                for (LibraryIndex lib : this.libraries)
+                    fp.add(lib.getHash());
+                if (this.deduceParameterNames) {
+                    for (byte[] hash : this.dictionaryHashes)
+                        fp.add(hash);
+                }
+                fingerprint = fp
+                        .add(this.deduceParameterNames)
+                        .add(this.createInits)
+                        .add(this.fixParameterAnnotations)
+                        .add(this.fernflowerMeta)
+                        .build();
+            }
+            else {
+                fingerprint = null;
+            }
+            ClassCache classCache = null;
+
+            // All stages share a single read and write of every class
+            final List<String> classNames = readClassNames(input);
+            final Set<String> inputClasses = new HashSet<>(classNames);
+            if (phase != null) {
+                phase.stop();
+                phase = report.start("transformation");
+            }
+            final int parallelism = this.getParallelism();
+
+            final List<JarReader> jars = new ArrayList<>();
+            jars.add(input);
+            jars.addAll(libraryJars);
+            final InheritanceProvider jarInheritance = new JarInheritanceProvider(jars);
+            final InheritanceProvider inheritance = this.libraries.isEmpty() ? jarInheritance : klass -> {
+                // The input jar comes first, like on the class path
+                if (!inputClasses.contains(klass)) {
+                    for (LibraryIndex lib : this.libraries) {
+                        final Optional<InheritanceProvider.ClassInfo> info = lib.provide(klass);
+                        if (info.isPresent())
+                            return info;
+                    }
+                }
+                return jarInheritance.provide(klass);
+            };
+
+            // Mappings are completed and indexed before any class is transformed, so workers only read them,
+            // with a cache it is only done once a class misses
+            final CompactRemapper compact;
+            final Remapper mapper;
+            final ParameterIndex parameters;
+            final Runnable beforeTransform;
+            if (mappings == null) {
+                // Compact mappings are never changed, inherited members are looked up once they are referenced
+                compact = new CompactRemapper(this.compactMappings, inheritance);
+                mapper = compact;
+                parameters = ParameterIndex.of(compact);
+                beforeTransform = () -> {};
+            }
+            else {
+                // The input classes and the classes they reference are completed, read by the workers
+                final MappingCompleter completer = new MappingCompleter(mappings, inheritance, () -> {
+                    try {
+                        final Set<String> ret = readReferencedClasses(input, workers);
+                        ret.addAll(classNames);
+                        return ret;
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }, parallelism);
+                compact = null;
+                mapper = new LorenzRemapper(mappings, inheritance);
+                if (fingerprint == null) {
+                    try {
+                        completer.complete();
+                    } catch (UncheckedIOException ex) {
+                        throw ex.getCause();
+                    }
+                    parameters = ParameterIndex.build(mappings, classNames);
+                    beforeTransform = () -> {};
+                }
+                else {
+                    parameters = ParameterIndex.lazy(mappings, classNames);
+                    beforeTransform = () -> {
+                        completer.complete();
+                        parameters.prepare();
+                    };
+                }
+            }
+
+            final List<ClassStage> stages = new ArrayList<>();
+            final AbstractParameterNames abstractNames;
+            if (this.deduceParameterNames) {
+                final EnhancedDeducingRemappingTransformer remapper = new EnhancedDeducingRemappingTransformer(mapper, parameters, this.dictionaries, this.fernflowerMeta);
+                abstractNames = remapper.getAbstractParameterNames();
+                stages.add(remapper);
+            }
+            else {
+                final EnhancedRemappingTransformer remapper = new EnhancedRemappingTransformer(mapper, parameters, this.fernflowerMeta);
+                abstractNames = remapper.getAbstractParameterNames();
+                stages.add(remapper);
+            }
+            if (this.createInits)
+                stages.add(compact != null ? new ConstructorInjector(inheritance, compact, this.log) : new ConstructorInjector(inheritance, mappings, this.log));
+            if (this.fixParameterAnnotations)
+                stages.add(new ParameterAnnotationFixer(this.log));
+            final ClassStageChain chain = new ClassStageChain(stages, this.report == null ? null : this.report.getStageTimings());
+            JarEntryTransformer transformer = chain;
+            if (fingerprint != null) {
+                classCache = new ClassCache(chain, abstractNames, beforeTransform, this.cache, fingerprint, new ClassSignatures(input));
+                transformer = classCache;
+            }
+            if (executor != null) {
+                transformer = new NestedJarTransformer(transformer, (name, data) -> this.remapNested(data, executor, nestedJars), this.log);
+            }
+            this.transform(input, new CollectingTransformer(transformer, writer::add), workers, report);
+
+            if (phase != null) {
+                phase.stop();
+                phase = report.start("output");
+            }
+            final OutputWriteEvent event = Jfr.AVAILABLE ? new OutputWriteEvent() : null;
+            if (event != null)
+                event.begin();
+            writer.write(output);
+            if (event != null && event.shouldCommit()) {
+                event.path = output.toString();
+                event.entries = writer.size();
+                event.size = Files.size(output);
+                event.commit();
+            }
+
+            final Result result = new Result(classNames.size(), writer.size(), nestedJars.get(),
+                    classCache == null ? 0 : classCache.getHits(), classCache == null ? 0 : classCache.getMisses(),
+                    Duration.ofNanos(System.nanoTime() - start));
+            if (phase != null) {
+                phase.stop();
+                report.count("classes", result.getClasses());
+                report.count("resources", result.getEntries() - result.getClasses());
+                report.count("nestedJars", result.getNestedJars());
+                report.count("cacheHits", result.getCacheHits());
+                report.count("cacheMisses", result.getCacheMisses());
+                report.count("bytesIn", input.size());
+                report.count("bytesOut", Files.size(output));
+            }
+            return result;
+        } finally {
+            for (JarReader lib : libraryJars)
+                lib.close();
+            if (executor == null)
+                workers.shutdown();
+            writer.close();
+        }
+    }
+
+    /**
+     * Runs every entry of the given jar through the given transformer. Every entry is
+     * inflated by the worker transforming it, so reading overlaps the transformation.
+     *
+     * @param report the report to add how busy the workers were to, or {@code null}
+     */
+    private void transform(final JarReader jar, final JarEntryTransformer transformer, final ExecutorService executor,
+                           final Report report) throws IOException {
+        // The largest entries go first, so a huge class isn't left to a single worker at the end
+        final List<JarReader.Entry> entries = new ArrayList<>(jar.getEntries());
+        entries.sort(Comparator.comparingInt(JarReader.Entry::getSize).reversed());
+
+        final long start = System.nanoTime();
+        final LongAdder busy = new LongAdder();
+        final AtomicLong lastStart = new AtomicLong(start);
+        final List<Future<?>> tasks = new ArrayList<>(entries.size());
+        for (JarReader.Entry entry : entries) {
+            tasks.add(executor.submit(() -> {
+                final long begin = System.nanoTime();
+                lastStart.accumulateAndGet(begin, Math::max);
+                try {
+                    entry.toJarEntry().accept(transformer);
+                } finally {
+                    busy.add(System.nanoTime() - begin);
+                }
+                return null;
+            }));
+        }
+
+        await(tasks, "transforming");
+
+        // Once the last entry started, workers run out of entries one after another
+        final long end = System.nanoTime();
+        final int workers = this.getParallelism();
+        if (report != null)
+            report.schedule(workers, entries.size(), end - start, busy.sum(), end - lastStart.get());
+        if (this.log.isEnabled(Log.Level.DEBUG) && end > start) {
+            this.log.debug(String.format("Transformed %d entries on %d workers in %d ms, %.0f%% busy, done %d ms after the last entry started",
+                    entries.size(), workers, (end - start) / 1000000, 100.0 * busy.sum() / (end - start) / workers, (end - lastStart.get()) / 1000000));
+        }
+        transformer.additions();
+    }
+
+    /**
+     * Waits for the given tasks, cancelling the rest once one of them failed.
+     */
+    private static void await(final List<Future<?>> tasks, final String what) throws IOException {
+        try {
+            for (Future<?> task : tasks)
+                task.get();
+        } catch (InterruptedException ex) {
+            tasks.forEach(task -> task.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while " + what);
+        } catch (ExecutionException ex) {
+            tasks.forEach(task -> task.cancel(false));
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            if (ex.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) ex.getCause()).getCause();
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            if (ex.getCause() instanceof Error)
+                throw (Error) ex.getCause();
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * Remaps a nested jar with its own copy of the mappings, as its classes are
+     * completed while the outer jar is transformed.
+     */
+    private byte[] remapNested(final byte[] data, final ExecutorService executor, final AtomicInteger nestedJars) throws IOException {
+        final Path output = Files.createTempFile("vignette", ".jar");
+        try (JarReader input = JarReader.read(data)) {
+            final Result result = this.remap(input, output, this.mappings == null ? null : this.mappings.copy(), executor, null);
+            nestedJars.addAndGet(1 + result.getNestedJars());
+            return Files.readAllBytes(output);
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    /**
+     * Reads the given mappings, as the builder does.
+     *
+     * @param compile whether the mappings are read through a {@link MappingCache}
+     * @param log the log to report a failed write of the cache to
+     */
+    public static MappingSet readMappings(final MappingFormat format, final Path path, final boolean compile, final Log log) throws IOException {
+        final MappingLoadEvent event = Jfr.AVAILABLE ? new MappingLoadEvent() : null;
+        if (event != null)
+            event.begin();
+
+        final MappingSet ret = compile ? MappingCache.read(format, path, log) : format.read(path);
+
+        if (event != null && event.shouldCommit()) {
+            event.path = path.toString();
+            event.format = format.toString();
+            event.compiled = compile;
+            // Counting would decode every class of compiled mappings
+            if (!compile) {
+                final int[] counts = new int[3];
+                for (ClassMapping<?, ?> cls : ret.getTopLevelClassMappings())
+                    count(cls, counts);
+                event.classes = counts[0];
+                event.fields = counts[1];
+                event.methods = counts[2];
+            }
+            event.commit();
+        }
+        return ret;
+    }
+
+    /**
+     * Reads the given mappings into {@link CompactMappings}, as the builder does.
+     */
+    public static CompactMappings readCompactMappings(final MappingFormat format, final Path path) throws IOException {
+        final MappingLoadEvent event = Jfr.AVAILABLE ? new MappingLoadEvent() : null;
+        if (event != null)
+            event.begin();
+
+        final CompactMappings ret = CompactMappings.read(format, path);
+
+        if (event != null && event.shouldCommit()) {
+            event.path = path.toString();
+            event.format = format.toString();
+            event.classes = ret.getClassCount();
+            event.fields = ret.getFieldCount();
+            event.methods = ret.getMethodCount();
+            event.commit();
+        }
+        return ret;
+    }
+
+    private static void count(final ClassMapping<?, ?> cls, final int[] counts) {
+        counts[0]++;
+        counts[1] += cls.getFieldMappings().size();
+        counts[2] += cls.getMethodMappings().size();
+        for (ClassMapping<?, ?> inner : cls.getInnerClassMappings())
+            count(inner, counts);
+    }
+
+    private static List<String> readClassNames(final JarReader jar) {
+        return jar.getEntries().stream()
+                .map(JarReader.Entry::getName)
+                .filter(name -> name.endsWith(".class") && !name.startsWith("META-INF/"))
+                .map(name -> name.substring(0, name.length() - ".class".length()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads the classes referenced from the constant pools of the classes in the given jar,
+     * every class is inflated and read by one of the workers.
+     */
+    private static Set<String> readReferencedClasses(final JarReader jar, final ExecutorService executor) throws IOException {
+        final Set<String> ret = ConcurrentHashMap.newKeySet();
+        final List<Future<?>> tasks = new ArrayList<>();
+        for (JarReader.Entry entry : jar.getEntries()) {
+            if (!entry.getName().endsWith(".class") || entry.getName().startsWith("META-INF/"))
+                continue;
+            tasks.add(executor.submit(() -> {
+                ret.addAll(ClassSignatures.referencedClasses(entry.read()));
+                return null;
+            }));
+        }
+        await(tasks, "reading classes");
+        return ret;
+    }
+
+    /**
+     * The statistics of a single {@link #remap(Path, Path)} call.
+     */
+    public static final class Result {
+
+        private final int classes;
+        private final int entries;
+        private final int nestedJars;
+        private final int cacheHits;
+        private final int cacheMisses;
+        private final Duration duration;
+
+        Result(final int classes, final int entries, final int nestedJars, final int cacheHits, final int cacheMisses, final Duration duration) {
+            this.classes = classes;
+            this.entries = entries;
+            this.nestedJars = nestedJars;
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+            this.duration = duration;
+        }
+
+        /**
+         * Gets the number of classes in the input jar.
+         */
+        public int getClasses() {
+            return this.classes;
+        }
+
+        /**
+         * Gets the number of entries written to the output jar, not counting directories.
+         */
+        public int getEntries() {
+            return this.entries;
+        }
+
+        /**
+         * Gets the number of nested jars remapped, at any depth.
+         */
+        public int getNestedJars() {
+            return this.nestedJars;
+        }
+
+        /**
+         * Gets the number of classes taken from the class cache.
+         */
+        public int getCacheHits() {
+            return this.cacheHits;
+        }
+
+        /**
+         * Gets the number of classes transformed and stored in the class cache.
+         */
+        public int getCacheMisses() {
+            return this.cacheMisses;
+        }
+
+        public Duration getDuration() {
+            return this.duration;
+        }
+
+    }
+
+    /**
+     * Configures and creates {@link Vignette} engines.
+     */
+    public static final class Builder {
+
+        private MappingFormat mappingFormat;
+        private Path mappingsPath;
+        private MappingSet mappings;
+        private CompactMappings compact;
+        private byte[] mappingsHash;
+        private boolean compileMappings;
+        private boolean compactMappings;
+        private boolean copyMappings = true;
+        private final List<Path> libraryJars = new ArrayList<>();
+        private final List<LibraryIndex> libraries = new ArrayList<>();
+        private final List<Path> dictionaryPaths = new ArrayList<>();
+        private final Set<Dictionary> dictionaries = new LinkedHashSet<>();
+        private final List<byte[]> dictionaryHashes = new ArrayList<>();
+        private boolean deduceParameterNames;
+        private boolean fernflowerMeta;
+        private boolean createInits;
+        private boolean fixParameterAnnotations;
+        private int threads;
+        private boolean stable;
+        private boolean store;
+        private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        private Path cache;
+        private boolean nestedJars;
+        private Report report;
+        private Log log = Log.none();
+
+        private Builder() {
+        }
+
+        /**
+         * Reads the mappings from the given file when the engine is built.
+         */
+        public Builder mappings(final MappingFormat format, final Path path) {
+            this.mappingFormat = format;
+            this.mappingsPath = path;
+            this.mappings = null;
+            this.compact = null;
+            return this;
+        }
+
+        /**
+         * Uses the given, already read, mappings.
+         *
+         * @param hash identifies the mappings in the class cache, such as a hash of their file
+         */
+        public Builder mappings(final MappingSet mappings, final byte[] hash) {
+            this.mappings = mappings;
+            this.mappingsHash = hash;
+            this.mappingsPath = null;
+            this.compact = null;
+            return this;
+        }
+
+        /**
+         * Uses the given, already read, compact mappings.
+         *
+         * @param hash identifies the mappings in the class cache, such as a hash of their file
+         * @see #compactMappings(boolean)
+         */
+        public Builder mappings(final CompactMappings mappings, final byte[] hash) {
+            this.compact = mappings;
+            this.mappingsHash = hash;
+            this.mappingsPath = null;
+            this.mappings = null;
+            return this;
+        }
+
+        /**
+         * Sets whether mappings read from a file are read through a {@link MappingCache}.
+         */
+        public Builder compileMappings(final boolean compileMappings) {
+            this.compileMappings = compileMappings;
+            return this;
+        }
+
+        /**
+         * Sets whether mappings read from a file are kept in {@link CompactMappings}
+         * instead of a mapping set, for very large mappings. They are never completed
+         * nor copied, and are not compiled.
+         */
+        public Builder compactMappings(final boolean compactMappings) {
+            this.compactMappings = compactMappings;
+            return this;
+        }
+
+        /**
+         * Sets whether every call remaps with its own copy of the mappings, the
+         * default. Otherwise the classes of every call are completed in the shared
+         * mappings, which saves the copy when the engine is only called once.
+         * Copies of compiled mappings only copy the classes decoded so far, every
+         * call decodes the classes it looks up.
+         */
+        public Builder copyMappings(final boolean copyMappings) {
+            this.copyMappings = copyMappings;
+            return this;
+        }
+
+        /**
+         * Adds a library, with a cache it is indexed when the engine is built.
+         */
+        public Builder library(final Path library) {
+            this.libraryJars.add(library);
+            return this;
+        }
+
+        /**
+         * Adds an already indexed library.
+         */
+        public Builder library(final LibraryIndex library) {
+            this.libraries.add(library);
+            return this;
+        }
+
+        /**
+         * Adds a dictionary to deduce parameter names with, read when the engine is built.
+         */
+        public Builder dictionary(final Path dictionary) {
+            this.dictionaryPaths.add(dictionary);
+            return this;
+        }
+
+        /**
+         * Adds an already read dictionary.
+         *
+         * @param hash identifies the dictionary in the class cache, such as a hash of its file
+         */
+        public Builder dictionary(final Dictionary dictionary, final byte[] hash) {
+            this.dictionaries.add(dictionary);
+            this.dictionaryHashes.add(hash);
+            return this;
+        }
+
+        public Builder deduceParameterNames(final boolean deduceParameterNames) {
+            this.deduceParameterNames = deduceParameterNames;
+            return this;
+        }
+
+        public Builder fernflowerMeta(final boolean fernflowerMeta) {
+            this.fernflowerMeta = fernflowerMeta;
+            return this;
+        }
+
+        public Builder createInits(final boolean createInits) {
+            this.createInits = createInits;
+            return this;
+        }
+
+        public Builder fixParameterAnnotations(final boolean fixParameterAnnotations) {
+            this.fixParameterAnnotations = fixParameterAnnotations;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads to remap with, {@code 0} uses one for every
+         * available processor.
+         */
+        public Builder threads(final int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder stable(final boolean stable) {
+            this.stable = stable;
+            return this;
+        }
+
+        /**
+         * Sets whether entries are stored without compression.
+         */
+        public Builder store(final boolean store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * Sets the compression level, from 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}.
+         */
+        public Builder compressionLevel(final int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        /**
+         * Sets the directory to cache transformed classes and library indexes in,
+         * or {@code null} for none.
+         */
+        public Builder cache(final Path cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Sets whether jars nested in the input jar are remapped too, with the
+         * same mappings and libraries.
+         */
+        public Builder nestedJars(final boolean nestedJars) {
+            this.nestedJars = nestedJars;
+            return this;
+        }
+
+        /**
+         * Sets the report to time the engine in, or {@code null} for none. The
+         * transformers are only timed with a report, as timing slows them down.
+         */
+        public Builder report(final Report report) {
+            this.report = report;
+            return this;
+        }
+
+        /**
+         * Sets the log the engine and transformers write their messages to, by
+         * default {@link Log#none()}. The log is not closed by the engine.
+         */
+        public Builder log(final Log log) {
+            this.log = log;
+            return this;
+        }
+
+        /**
+         * Reads everything the engine needs and creates it.
+         */
+        public Vignette build() throws IOException {
+            Report.Phase phase = this.report == null ? null : this.report.start("mappings");
+            MappingSet mappings = null;
+            CompactMappings compact = null;
+            final byte[] mappingsHash;
+            if (this.mappingsPath != null) {
+                if (this.compactMappings)
+                    compact = readCompactMappings(this.mappingFormat, this.mappingsPath);
+                else
+                    mappings = readMappings(this.mappingFormat, this.mappingsPath, this.compileMappings, this.log);
+                mappingsHash = this.cache == null ? null : new Fingerprint()
+                        .add(this.mappingFormat.toString())
+                        .add(new Fingerprint().addFile(this.mappingsPath).build())
+                        .build();
+            }
+            else if (this.mappings != null) {
+                mappings = this.mappings;
+                mappingsHash = this.mappingsHash;
+            }
+            else if (this.compact != null) {
+                compact = this.compact;
+                mappingsHash = this.mappingsHash;
+            }
+            else {
+                throw new IllegalStateException("No mappings given!");
+            }
+            if (this.cache != null && mappingsHash == null)
+                throw new IllegalStateException("The class cache needs a hash of the mappings!");
+            if (phase != null) {
+                phase.stop();
+                phase = this.report.start("libraries");
+            }
+
+            // With a cache the libraries are answered from their indexes instead of being read from the jars
+            final List<Path> libraryJars = new ArrayList<>();
+            final List<LibraryIndex> libraries = new ArrayList<>(this.libraries);
+            for (Path lib : this.libraryJars) {
+                if (this.cache != null)
+                    libraries.add(LibraryIndex.open(lib, this.cache.resolve("libraries")));
+                else
+                    libraryJars.add(lib);
+            }
+
+            if (phase != null) {
+                phase.stop();
+                phase = this.report.start("dictionaries");
+            }
+            final Set<Dictionary> dictionaries = new LinkedHashSet<>(this.dictionaries);
+            final List<byte[]> dictionaryHashes = new ArrayList<>(this.dictionaryHashes);
+            if (this.cache != null && dictionaryHashes.contains(null))
+                throw new IllegalStateException("The class cache needs a hash of every dictionary!");
+            for (Path dict : this.dictionaryPaths) {
+                try (InputStream in = Files.newInputStream(dict)) {
+                    dictionaries.add(new Dictionary().load(in));
+                }
+                if (this.cache != null)
+                    dictionaryHashes.add(new Fingerprint().addFile(dict).build());
+            }
+            if (phase != null)
+                phase.stop();
+
+            return new Vignette(this, mappings, compact, mappingsHash, libraryJars, libraries, dictionaries, dictionaryHashes);
+        }
+
+    }
+
+}
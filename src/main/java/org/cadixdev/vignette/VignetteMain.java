@@ -8,39 +8,30 @@
 
 import static java.util.Arrays.asList;
 
-import com.google.common.collect.ImmutableList;
-import com.google.common.jimfs.Configuration;
-import com.google.common.jimfs.Jimfs;
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
-import net.minecraftforge.lex.ConstructorInjector;
-import net.minecraftforge.lex.EnhancedRemappingTransformer;
-import net.minecraftforge.lex.ParameterAnnotationFixer;
 
-import org.cadixdev.atlas.Atlas;
-import org.cadixdev.atlas.util.NIOHelper;
-import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.io.MappingFormat;
 import org.cadixdev.lorenz.io.MappingFormats;
+import org.cadixdev.vignette.cache.Fingerprint;
+import org.cadixdev.vignette.daemon.ResourceCache;
+import org.cadixdev.vignette.daemon.VignetteClient;
+import org.cadixdev.vignette.daemon.VignetteDaemon;
+import org.cadixdev.vignette.report.Report;
 import org.cadixdev.vignette.util.MappingFormatValueConverter;
 import org.cadixdev.vignette.util.PathValueConverter;
-import org.minecraftplus.EnhancedDeducingRemappingTransformer;
-import org.minecraftplus.srgprocessor.Dictionary;
+import org.minecraftplus.Log;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.file.FileSystem;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
 
 /**
  * The Main-Class behind Vignette.
@@ -51,12 +42,31 @@
 public final class VignetteMain {
 
     public static void main(final String[] args) {
+        final int status = run(args, Paths.get("").toAbsolutePath(), System.out, System.err, null);
+        if (status != 0)
+            System.exit(status);
+    }
 
+    /**
+     * Runs Vignette with the given arguments, relative paths are resolved against
+     * the given working directory.
+     *
+     * @param resources the resources kept by a daemon, or {@code null} to read them for this run only
+     * @return the exit status
+     */
+    private static int run(final String[] args, final Path workingDirectory, final PrintStream out, final PrintStream err,
+                           final ResourceCache resources) {
         final OptionParser parser = new OptionParser();
 
         // Modes
         final OptionSpec<Void> helpSpec = parser.acceptsAll(asList("?", "help"), "Show the help").forHelp();
         final OptionSpec<Void> versionSpec = parser.accepts("version", "Shows the version");
+        final OptionSpec<Integer> daemonSpec = parser.accepts("daemon", "Keep running and accept jobs from clients on the given loopback port")
+                .withRequiredArg().ofType(Integer.class);
+        final OptionSpec<Integer> clientSpec = parser.accepts("client", "Submit the job to a daemon on the given loopback port")
+                .withRequiredArg().ofType(Integer.class);
+        final OptionSpec<Integer> stopSpec = parser.accepts("stop-daemon", "Stop the daemon on the given loopback port once its jobs are done")
+                .withRequiredArg().ofType(Integer.class);
 
         // Options
         final OptionSpec<Path> jarInSpec = parser.acceptsAll(asList("jar-in", "i"), "The jar to remap/map")
@@ -74,7 +84,7 @@ public static void main(final String[] args) {
                 .withValuesConvertedBy(PathValueConverter.INSTANCE);
 
         // Optional Options
-        final OptionSpec<Integer> threadsSpec = parser.acceptsAll(asList("threads", "t"), "Number of threads to use when remapping")
+        final OptionSpec<Integer> threadsSpec = parser.acceptsAll(asList("threads", "t"), "Number of threads to use when remapping, defaults to the available processors")
                 .withRequiredArg().ofType(Integer.class);
         final OptionSpec<Path> librarySpec = parser.acceptsAll(asList("library", "l", "e"), "Library to add to the classpath for constructing inheritence")
                 .withRequiredArg()
@@ -87,25 +97,64 @@ public static void main(final String[] args) {
                 .withRequiredArg()
                 .withValuesConvertedBy(PathValueConverter.INSTANCE);
         final OptionSpec<Void> stableSpec = parser.accepts("stable", "Generate stable jars that attempt to change less for the same given inputs");
+        final OptionSpec<Integer> compressionSpec = parser.accepts("compression-level", "Compression level of the output jar, from 0 to 9")
+                .withRequiredArg().ofType(Integer.class)
+                .defaultsTo(Deflater.DEFAULT_COMPRESSION);
+        final OptionSpec<Void> storeSpec = parser.accepts("store", "Store the entries of the output jar without compression");
+        final OptionSpec<Void> mappingCacheSpec = parser.accepts("mapping-cache", "Compile the mappings into a binary file next to them, reused by later runs");
+        final OptionSpec<Void> compactSpec = parser.accepts("compact-mappings", "Keep the mappings in compact read-only tables, for very large mappings");
+        final OptionSpec<Path> cacheSpec = parser.accepts("cache", "Directory to cache transformed classes in, reused by later runs")
+                .withRequiredArg()
+                .withValuesConvertedBy(PathValueConverter.INSTANCE);
+        final OptionSpec<Void> nestedSpec = parser.accepts("nested-jars", "Remap jars nested in the input jar with the same mappings and libraries");
+        final OptionSpec<Void> quietSpec = parser.acceptsAll(asList("quiet", "q"), "Only print errors");
+        final OptionSpec<Void> verboseSpec = parser.acceptsAll(asList("verbose", "v"), "Also print what the transformers considered but left alone");
+        final OptionSpec<Path> reportSpec = parser.accepts("report", "JSON file to write the timings and statistics of the run to")
+                .withRequiredArg()
+                .withValuesConvertedBy(PathValueConverter.INSTANCE);
 
         final OptionSet options;
         try {
-            options = parser.parse(enhanceArgs(args));
+            options = parser.parse(enhanceArgs(args, workingDirectory));
         }
         catch (final OptionException ex) {
-            System.err.println("Failed to parse OptionSet! Exiting...");
-            ex.printStackTrace(System.err);
-            System.exit(-1);
-            return;
+            err.println("Failed to parse OptionSet! Exiting...");
+            ex.printStackTrace(err);
+            return -1;
         }
 
-        if (options.has(helpSpec)) {
+        if (resources == null && options.has(daemonSpec)) {
+            try (VignetteDaemon daemon = new VignetteDaemon(options.valueOf(daemonSpec), VignetteMain::run)) {
+                out.println("Daemon: " + daemon.getPort());
+                daemon.run();
+            }
+            catch (final IOException ex) {
+                throw new RuntimeException("Failed to run daemon!", ex);
+            }
+        }
+        else if (resources == null && options.has(stopSpec)) {
             try {
-                parser.printHelpOn(System.out);
+                VignetteClient.stop(options.valueOf(stopSpec));
+            }
+            catch (final IOException ex) {
+                throw new RuntimeException("Failed to stop daemon!", ex);
+            }
+        }
+        else if (resources == null && options.has(clientSpec)) {
+            try {
+                return VignetteClient.submit(options.valueOf(clientSpec), workingDirectory, args, out);
+            }
+            catch (final IOException ex) {
+                throw new RuntimeException("Failed to submit job to daemon!", ex);
+            }
+        }
+        else if (options.has(helpSpec)) {
+            try {
+                parser.printHelpOn(out);
             } catch (final IOException ex) {
-                System.err.println("Failed to print help information!");
-                ex.printStackTrace(System.err);
-                System.exit(-1);
+                err.println("Failed to print help information!");
+                ex.printStackTrace(err);
+                return -1;
             }
         }
         else if (options.has(versionSpec)) {
@@ -117,139 +166,149 @@ else if (options.has(versionSpec)) {
                     "Vignette is made available under the terms of the Mozilla Public License 2.0, giving",
                     "you the freedom to use, copy, and distribute Vignette to others, in addition to",
                     "the right to distribute modified versions."
-            ).forEach(System.out::println);
+            ).forEach(out::println);
         }
         else if (options.has(mappingsSpec) && options.has(jarInSpec) && options.has(jarOutSpec)) {
-            final Path jarInPath = options.valueOf(jarInSpec);
-            final Path jarOutPath = options.valueOf(jarOutSpec);
-            System.out.println("Input: " + jarInPath);
-            System.out.println("Output: " + jarOutPath);
-            if (Files.notExists(jarInPath)) {
-                throw new RuntimeException("Input jar does not exist!");
-            }
+            final Path jarInPath = workingDirectory.resolve(options.valueOf(jarInSpec));
+            final Path jarOutPath = workingDirectory.resolve(options.valueOf(jarOutSpec));
+            // Messages of the main thread go through the log too, to keep their order with those of the workers
+            final Log log = new Log(out, options.has(quietSpec) ? Log.Level.QUIET : options.has(verboseSpec) ? Log.Level.DEBUG : Log.Level.INFO);
+            // Closed on failures too, so messages handed over before them are written and the writer stops
+            try {
+                log.info("Input: " + jarInPath);
+                log.info("Output: " + jarOutPath);
+                if (Files.notExists(jarInPath)) {
+                    throw new RuntimeException("Input jar does not exist!");
+                }
 
-            final MappingFormat mappingFormat = options.valueOf(mappingFormatSpec);
-            final Path mappingsPath = options.valueOf(mappingsSpec);
-            if (Files.notExists(mappingsPath)) {
-                throw new RuntimeException("Input mappings does not exist!");
-            }
+                final MappingFormat mappingFormat = options.valueOf(mappingFormatSpec);
+                final Path mappingsPath = workingDirectory.resolve(options.valueOf(mappingsSpec));
+                if (Files.notExists(mappingsPath)) {
+                    throw new RuntimeException("Input mappings does not exist!");
+                }
 
-            final MappingSet mappings;
-            try {
-                System.out.println("Format: " + mappingFormat);
-                System.out.println("Mappings: " + mappingsPath);
-                mappings = mappingFormat.read(mappingsPath);
-            }
-            catch (final IOException ex) {
-                throw new RuntimeException("Failed to read input mappings!", ex);
-            }
+                log.info("Format: " + mappingFormat);
+                log.info("Mappings: " + mappingsPath);
+                final Vignette.Builder builder = Vignette.builder()
+                        .compileMappings(options.has(mappingCacheSpec))
+                        .compactMappings(options.has(compactSpec))
+                        // A single run may complete the mappings in place, jobs of a daemon share them
+                        .copyMappings(resources != null)
+                        .deduceParameterNames(options.has(parDeduceSpec))
+                        .fernflowerMeta(options.has(ffmetaSpec))
+                        .createInits(options.has(ctrSpec))
+                        .fixParameterAnnotations(options.has(parAnnSpec))
+                        .threads(options.has(threadsSpec) ? options.valueOf(threadsSpec) : 0)
+                        .stable(options.has(stableSpec))
+                        .store(options.has(storeSpec))
+                        .compressionLevel(options.valueOf(compressionSpec))
+                        .nestedJars(options.has(nestedSpec));
+                try {
+                    if (resources != null && options.has(compactSpec))
+                        builder.mappings(resources.getCompactMappings(mappingFormat, mappingsPath),
+                                new Fingerprint().add(mappingFormat.toString()).add(resources.getHash(mappingsPath)).build());
+                    else if (resources != null)
+                        builder.mappings(resources.getMappings(mappingFormat, mappingsPath, options.has(mappingCacheSpec), log),
+                                new Fingerprint().add(mappingFormat.toString()).add(resources.getHash(mappingsPath)).build());
+                    else
+                        builder.mappings(mappingFormat, mappingsPath);
+                }
+                catch (final IOException ex) {
+                    throw new RuntimeException("Failed to read input mappings!", ex);
+                }
 
-            try (Atlas atlas = options.has(threadsSpec) ? new Atlas(options.valueOf(threadsSpec)) : new Atlas()) {
                 for (Path lib : options.valuesOf(librarySpec)) {
+                    lib = workingDirectory.resolve(lib);
                     try {
-                        System.out.println("Library: " + lib);
-                        atlas.use(lib);
+                        log.info("Library: " + lib);
+                        if (resources != null)
+                            builder.library(resources.getLibrary(lib));
+                        else
+                            builder.library(lib);
                     } catch (IOException ex) {
                         throw new RuntimeException("Failed to read library!", ex);
                     }
                 }
 
                 if (options.has(parDeduceSpec)) {
-                    Set<Dictionary> dictionaries = new HashSet<>();
                     for (Path dict : options.valuesOf(dictionarySpec)) {
+                        dict = workingDirectory.resolve(dict);
                         try {
-                            System.out.println("Dictionary: " + dict);
-                            dictionaries.add(new Dictionary().load(new FileInputStream(dict.toFile())));
+                            log.info("Dictionary: " + dict);
+                            if (resources != null)
+                                builder.dictionary(resources.getDictionary(dict), resources.getHash(dict));
+                            else
+                                builder.dictionary(dict);
                         } catch (IOException ex) {
                             throw new RuntimeException("Failed to read dictionary!", ex);
                         }
                     }
-                    atlas.install(ctx -> new EnhancedDeducingRemappingTransformer(mappings, dictionaries, ctx, options.has(ffmetaSpec)));
-                    System.out.println("Deducing");
-                } else {
-                    atlas.install(ctx -> new EnhancedRemappingTransformer(mappings, ctx, options.has(ffmetaSpec)));
+                    log.info("Deducing");
                 }
+                if (options.has(ctrSpec))
+                    log.info("Constructors");
+                if (options.has(parAnnSpec))
+                    log.info("Parameter Annotations");
+                if (options.has(nestedSpec))
+                    log.info("Nested Jars");
+                if (options.has(cacheSpec)) {
+                    final Path cachePath = workingDirectory.resolve(options.valueOf(cacheSpec));
+                    log.info("Cache: " + cachePath);
+                    builder.cache(cachePath);
+                }
+                final Report report = options.has(reportSpec) ? new Report(20) : null;
+                builder.report(report);
+                builder.log(log);
 
-                if (options.has(ctrSpec)) {
-                    atlas.install(ctx -> new ConstructorInjector(ctx, mappings));
-                    System.out.println("Constructors");
+                final Vignette vignette;
+                try {
+                    vignette = builder.build();
                 }
-                if (options.has(parAnnSpec)) {
-                    atlas.install(ctx -> new ParameterAnnotationFixer());
-                    System.out.println("Parameter Annotations");
+                catch (final IOException ex) {
+                    throw new RuntimeException("Failed to read inputs!", ex);
                 }
 
-                if (options.has(stableSpec)) {
-                    try (FileSystem memFs = Jimfs.newFileSystem(Configuration.unix())) {
-                        Path memoryOutput = memFs.getPath("output.jar");
-
-                        try {
-                            atlas.run(jarInPath, memoryOutput);
-                        } catch (UnsupportedOperationException e) {
-                            // TODO upstream a fix to Atlas
-                        }
+                try {
+                    final Vignette.Result result = vignette.remap(jarInPath, jarOutPath);
+                    if (options.has(nestedSpec))
+                        log.info("Nested Jars: " + result.getNestedJars());
+                    if (options.has(cacheSpec))
+                        log.info("Cache: " + result.getCacheHits() + " hits, " + result.getCacheMisses() + " misses");
+                    log.info("Processing Complete");
+                }
+                catch (final IOException ex) {
+                    throw new RuntimeException("Failed to remap artifact!", ex);
+                }
 
-                        Files.copy(makeStableJar(memFs, memoryOutput), jarOutPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                if (report != null) {
+                    final Path reportPath = workingDirectory.resolve(options.valueOf(reportSpec));
+                    try {
+                        report.write(reportPath);
+                        log.info("Report: " + reportPath);
+                    }
+                    catch (final IOException ex) {
+                        throw new RuntimeException("Failed to write report!", ex);
                     }
-                } else {
-                    atlas.run(jarInPath, jarOutPath);
                 }
-
-                System.out.println("Processing Complete");
             }
-            catch (final IOException ex) {
-                throw new RuntimeException("Failed to remap artifact!", ex);
+            finally {
+                log.close();
             }
         }
         else {
             try {
-                parser.printHelpOn(System.err);
+                parser.printHelpOn(err);
             }
             catch (final IOException ex) {
-                System.err.println("Failed to print help information!");
-                ex.printStackTrace(System.err);
-            }
-            System.exit(-1);
-        }
-    }
-
-    private static Path makeStableJar(FileSystem memFs, Path input) throws IOException {
-        Path output = memFs.getPath("stable.jar");
-        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(output));
-            FileSystem zipFs = NIOHelper.openZip(input, false)) {
-            Path rootInput = zipFs.getPath("/");
-            List<Path> paths = Files.walk(rootInput).collect(Collectors.toList());
-            List<String> special = ImmutableList.of("/META-INF", "/META-INF/MANIFEST.MF");
-            paths.sort(Comparator.comparing(Path::toString, (left, right) -> {
-                boolean containsLeft = special.contains(left);
-                boolean containsRight = special.contains(right);
-                if (containsLeft && containsRight) {
-                    return Integer.compare(special.indexOf(left), special.indexOf(right));
-                }
-                if (containsLeft)
-                    return 1;
-                if (containsRight)
-                    return -1;
-                return left.compareTo(right);
-            }));
-            paths.remove(rootInput);
-            for (Path path : paths) {
-                String pathString = path.toString().substring(1).replace('\\', '/');
-                boolean directory = Files.isDirectory(path);
-                if (directory && !pathString.endsWith("/"))
-                    pathString += "/";
-                ZipEntry zipEntry = new ZipEntry(pathString);
-                zipEntry.setTime(628041600000L); //Java8 screws up on 0 time, so use another static time.
-                zos.putNextEntry(zipEntry);
-                if (Files.isRegularFile(path))
-                    Files.copy(path, zos);
-                zos.closeEntry();
+                err.println("Failed to print help information!");
+                ex.printStackTrace(err);
             }
+            return -1;
         }
-        return output;
+        return 0;
     }
 
-    private static String[] enhanceArgs(String[] args) {
+    private static String[] enhanceArgs(String[] args, Path workingDirectory) {
         List<String> params = new ArrayList<>();
         for (int x = 0; x < args.length; x++) {
             if (args[x].startsWith("--cfg")) {
@@ -260,7 +319,7 @@ else if (args.length > x+1)
                     path = args[++x];
                 else
                     throw new IllegalArgumentException("Must specify a file when using --cfg argument.");
-                Path file = Paths.get(path);
+                Path file = workingDirectory.resolve(path);
 
                 if (!Files.exists(file))
                     throw new IllegalArgumentException("error: missing config '" + path + "'");
@@ -0,0 +1,211 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.cache;
+
+import org.cadixdev.bombe.jar.AbstractJarEntry;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.cadixdev.bombe.jar.JarManifestEntry;
+import org.cadixdev.bombe.jar.JarResourceEntry;
+import org.cadixdev.bombe.jar.JarServiceProviderConfigurationEntry;
+import org.minecraftplus.AbstractParameterNames;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link JarEntryTransformer} keeping the transformed classes of the wrapped
+ * transformer on disk, so they are not transformed again by later runs.
+ * <p>
+ * Classes are keyed by a hash of their name and bytes and the {@link ClassSignatures}
+ * of the classes of the jar they reference, together with a {@link Fingerprint} of
+ * the mappings, libraries and options of the run. Changing a class only invalidates
+ * the classes referencing it, and only when its signature changes. A cached
+ * class stores the output entry and the abstract parameter names stored while
+ * transforming it, on a hit the wrapped transformer is skipped entirely. Other
+ * entries are always passed to the wrapped transformer.
+ */
+public final class ClassCache implements JarEntryTransformer {
+
+    private static final int MAGIC = 0x56434301;
+
+    private final JarEntryTransformer transformer;
+    private final AbstractParameterNames abstractNames;
+    private final Runnable beforeTransform;
+    private final Path directory;
+    private final byte[] fingerprint;
+    private final ClassSignatures signatures;
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(Fingerprint::sha256);
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Creates a cache.
+     *
+     * @param transformer the transformer to cache classes of
+     * @param abstractNames the abstract parameter names stored by the transformer
+     * @param beforeTransform run before a class is transformed, to prepare state only needed on a miss
+     * @param directory the directory of the cache
+     * @param fingerprint the fingerprint of the run
+     * @param signatures the signatures of the classes of the jar
+     */
+    public ClassCache(final JarEntryTransformer transformer, final AbstractParameterNames abstractNames, final Runnable beforeTransform,
+                      final Path directory, final byte[] fingerprint, final ClassSignatures signatures) {
+        this.transformer = transformer;
+        this.abstractNames = abstractNames;
+        this.beforeTransform = beforeTransform;
+        this.directory = directory;
+        this.fingerprint = fingerprint.clone();
+        this.signatures = signatures;
+    }
+
+    public int getHits() {
+        return this.hits.get();
+    }
+
+    public int getMisses() {
+        return this.misses.get();
+    }
+
+    @Override
+    public JarClassEntry transform(final JarClassEntry entry) {
+        final Path file;
+        try {
+            file = this.file(entry);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        final Cached cached = read(file);
+        if (cached != null) {
+            this.hits.incrementAndGet();
+            this.abstractNames.addAll(cached.abstractNames);
+            return new JarClassEntry(cached.name, entry.getTime(), cached.data);
+        }
+
+        this.misses.incrementAndGet();
+        this.beforeTransform.run();
+        final List<String> abstractNames = new ArrayList<>();
+        final JarClassEntry ret = this.abstractNames.record(abstractNames, () -> this.transformer.transform(entry));
+        if (ret != null) {
+            try {
+                write(file, new Cached(ret.getName(), abstractNames, ret.getContents()));
+            } catch (IOException ex) {
+                throw new RuntimeException("Failed to write class cache!", ex);
+            }
+        }
+        return ret;
+    }
+
+    private Path file(final JarClassEntry entry) throws IOException {
+        // The classes of the jar it references, and their super types, decide how it is remapped
+        final List<byte[]> signatures = new ArrayList<>();
+        for (String klass : ClassSignatures.referencedClasses(entry.getContents())) {
+            final byte[] signature = this.signatures.get(klass);
+            if (signature != null)
+                signatures.add(signature);
+        }
+
+        final MessageDigest digest = this.digests.get();
+        digest.reset();
+        digest.update(this.fingerprint);
+        digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(entry.getContents());
+        signatures.forEach(digest::update);
+        final String key = Fingerprint.toHex(digest.digest());
+        return this.directory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+    }
+
+    private static Cached read(final Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC)
+                return null;
+            final String name = in.readUTF();
+            final int count = in.readInt();
+            final List<String> abstractNames = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                abstractNames.add(in.readUTF());
+            final byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return new Cached(name, abstractNames, data);
+        } catch (IOException ex) {
+            // Missing and broken entries are a miss, they are written again
+            return null;
+        }
+    }
+
+    private static void write(final Path file, final Cached cached) throws IOException {
+        Files.createDirectories(file.getParent());
+        // Written to a temporary file first, so concurrent runs never read half written entries
+        final Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(cached.name);
+                out.writeInt(cached.abstractNames.size());
+                for (String line : cached.abstractNames)
+                    out.writeUTF(line);
+                out.writeInt(cached.data.length);
+                out.write(cached.data);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public JarManifestEntry transform(final JarManifestEntry entry) {
+        return this.transformer.transform(entry);
+    }
+
+    @Override
+    public JarServiceProviderConfigurationEntry transform(final JarServiceProviderConfigurationEntry entry) {
+        return this.transformer.transform(entry);
+    }
+
+    @Override
+    public JarResourceEntry transform(final JarResourceEntry entry) {
+        return this.transformer.transform(entry);
+    }
+
+    @Override
+    public List<AbstractJarEntry> additions() {
+        return this.transformer.additions();
+    }
+
+    private static final class Cached {
+        final String name;
+        final List<String> abstractNames;
+        final byte[] data;
+
+        Cached(final String name, final List<String> abstractNames, final byte[] data) {
+            this.name = name;
+            this.abstractNames = abstractNames;
+            this.data = data;
+        }
+    }
+
+}
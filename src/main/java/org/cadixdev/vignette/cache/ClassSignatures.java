@@ -0,0 +1,134 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.cache;
+
+import org.cadixdev.vignette.jar.JarReader;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The signatures of the classes in a jar, that the classes referencing them
+ * are keyed on in the {@link ClassCache}.
+ * <p>
+ * The signature of a class hashes its name, super types and members, method
+ * bodies are left out so changing them doesn't invalidate other classes. Members
+ * are inherited, so it also covers the signatures of its super types in the jar.
+ * Classes are only read once they are asked for, and are cached.
+ */
+public final class ClassSignatures {
+
+    // Classes not in the jar, which are covered by the libraries instead
+    private static final byte[] MISSING = new byte[0];
+
+    private final JarReader jar;
+    private final Map<String, byte[]> signatures = new ConcurrentHashMap<>();
+
+    public ClassSignatures(final JarReader jar) {
+        this.jar = jar;
+    }
+
+    /**
+     * Gets the signature of the given class, or {@code null} if it is not in the jar.
+     */
+    public byte[] get(final String klass) throws IOException {
+        final byte[] ret = this.get(klass, new HashSet<>());
+        return ret == MISSING ? null : ret;
+    }
+
+    private byte[] get(final String klass, final Set<String> visiting) throws IOException {
+        final byte[] cached = this.signatures.get(klass);
+        if (cached != null)
+            return cached;
+        // Only broken jars have circular hierarchies, the class is then left out of its own signature
+        if (!visiting.add(klass))
+            return MISSING;
+
+        final JarReader.Entry entry = this.jar.getEntry(klass + ".class");
+        byte[] ret = MISSING;
+        if (entry != null) {
+            final Fingerprint fp = new Fingerprint();
+            for (String parent : signature(entry.read(), fp)) {
+                final byte[] signature = this.get(parent, visiting);
+                if (signature != MISSING)
+                    fp.add(signature);
+            }
+            ret = fp.build();
+        }
+        final byte[] existing = this.signatures.putIfAbsent(klass, ret);
+        return existing != null ? existing : ret;
+    }
+
+    /**
+     * Adds the signature of the given class to the fingerprint.
+     *
+     * @return the super types of the class
+     */
+    private static List<String> signature(final byte[] data, final Fingerprint fp) {
+        final List<String> parents = new ArrayList<>();
+        new ClassReader(data).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                fp.add(access + " " + name + ' ' + superName + ' ' + (interfaces == null ? "" : String.join(" ", interfaces)));
+                if (superName != null)
+                    parents.add(superName);
+                if (interfaces != null)
+                    Collections.addAll(parents, interfaces);
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                fp.add("F " + access + ' ' + name + ' ' + descriptor);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                fp.add("M " + access + ' ' + name + ' ' + descriptor);
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return parents;
+    }
+
+    /**
+     * Reads the classes referenced from the constant pool of the given class,
+     * element types of arrays included, in the order of the constant pool.
+     */
+    public static List<String> referencedClasses(final byte[] data) {
+        final ClassReader reader = new ClassReader(data);
+        final List<String> ret = new ArrayList<>();
+        final char[] buf = new char[reader.getMaxStringLength()];
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            final int item = reader.getItem(i);
+            // The second slot of longs and doubles has no item
+            if (item == 0 || reader.readByte(item - 1) != 7)
+                continue;
+            String name = reader.readUTF8(item, buf);
+            if (name.startsWith("[")) {
+                name = name.substring(name.lastIndexOf('[') + 1);
+                if (!name.startsWith("L"))
+                    continue;
+                name = name.substring(1, name.length() - 1);
+            }
+            ret.add(name);
+        }
+        return ret;
+    }
+
+}
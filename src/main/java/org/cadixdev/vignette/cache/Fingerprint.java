@@ -0,0 +1,101 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A SHA-256 digest of everything, besides the class itself, that the output
+ * of a class depends on.
+ *
+ * @see ClassCache
+ */
+public final class Fingerprint {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final MessageDigest digest = sha256();
+
+    /**
+     * Adds the given string.
+     */
+    public Fingerprint add(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.addLength(bytes.length);
+        this.digest.update(bytes);
+        return this;
+    }
+
+    /**
+     * Adds the given bytes, such as the hash of another fingerprint.
+     */
+    public Fingerprint add(final byte[] value) {
+        this.addLength(value.length);
+        this.digest.update(value);
+        return this;
+    }
+
+    /**
+     * Adds the given flag.
+     */
+    public Fingerprint add(final boolean value) {
+        this.digest.update((byte) (value ? 1 : 0));
+        return this;
+    }
+
+    /**
+     * Adds the contents of the given file.
+     */
+    public Fingerprint addFile(final Path file) throws IOException {
+        this.addLength(Files.size(file));
+        final byte[] buf = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int len; (len = in.read(buf)) != -1;)
+                this.digest.update(buf, 0, len);
+        }
+        return this;
+    }
+
+    /**
+     * Completes the fingerprint, it may not be used afterwards.
+     */
+    public byte[] build() {
+        return this.digest.digest();
+    }
+
+    private void addLength(final long length) {
+        for (int i = 0; i < 8; i++)
+            this.digest.update((byte) (length >>> (i * 8)));
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available!", ex);
+        }
+    }
+
+    /**
+     * Formats the given hash as lowercase hexadecimal.
+     */
+    public static String toHex(final byte[] bytes) {
+        final char[] ret = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            ret[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            ret[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(ret);
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.cache;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link MappingSet} backed by a compiled mapping file, decoding every top
+ * level class the first time it is looked up. Copies share the compiled file
+ * and only copy the classes decoded so far, the others are decoded by the copy.
+ *
+ * @see MappingCache
+ */
+final class LazyMappingSet extends MappingSet {
+
+    private final ByteBuffer buf;
+    private final int stringOffsets;
+    private final int stringData;
+    // Shared with copies, strings are immutable so racing decodes of one are harmless
+    private final String[] strings;
+
+    /**
+     * The offset of the record of every top level class, shared with copies.
+     */
+    private final Map<String, Integer> offsets;
+
+    /**
+     * The top level classes decoded into this set.
+     */
+    private final Set<String> decoded = ConcurrentHashMap.newKeySet();
+
+    LazyMappingSet(final ByteBuffer buf, final int start) {
+        this.buf = buf;
+        final int stringCount = buf.getInt(start);
+        this.stringOffsets = start + 4;
+        this.stringData = this.stringOffsets + 4 * (stringCount + 1);
+        this.strings = new String[stringCount];
+
+        final int classes = this.stringData + buf.getInt(this.stringOffsets + 4 * stringCount);
+        final int classCount = buf.getInt(classes);
+        final Map<String, Integer> offsets = new HashMap<>(classCount * 2);
+        for (int i = 0; i < classCount; i++) {
+            final int entry = classes + 4 + 8 * i;
+            offsets.put(this.string(buf.getInt(entry)), buf.getInt(entry + 4));
+        }
+        this.offsets = offsets;
+    }
+
+    private LazyMappingSet(final LazyMappingSet source) {
+        this.buf = source.buf;
+        this.stringOffsets = source.stringOffsets;
+        this.stringData = source.stringData;
+        this.strings = source.strings;
+        this.offsets = source.offsets;
+    }
+
+    private String string(final int index) {
+        if (index < 0)
+            return null;
+        String ret = this.strings[index];
+        if (ret == null) {
+            final int from = this.buf.getInt(this.stringOffsets + 4 * index);
+            final int to = this.buf.getInt(this.stringOffsets + 4 * (index + 1));
+            final byte[] bytes = new byte[to - from];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = this.buf.get(this.stringData + from + i);
+            this.strings[index] = ret = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return ret;
+    }
+
+    private void load(final String obfuscatedName) {
+        if (this.decoded.size() == this.offsets.size())
+            return;
+        final String name = obfuscatedName.replace('.', '/');
+        final Integer offset = this.offsets.get(name);
+        if (offset == null || this.decoded.contains(name))
+            return;
+
+        synchronized (this) {
+            // Only marked once decoded, so other threads wait for the whole class
+            if (!this.decoded.contains(name)) {
+                final TopLevelClassMapping cls = super.createTopLevelClassMapping(name, name);
+                this.readClass(offset, cls);
+                this.decoded.add(name);
+            }
+        }
+    }
+
+    private void loadAll() {
+        if (this.decoded.size() == this.offsets.size())
+            return;
+        synchronized (this) {
+            for (String name : this.offsets.keySet())
+                this.load(name);
+        }
+    }
+
+    private int readClass(int pos, final ClassMapping<?, ?> cls) {
+        cls.setDeobfuscatedName(this.string(this.buf.getInt(pos)));
+        pos += 4;
+
+        final int fields = this.buf.getInt(pos);
+        pos += 4;
+        for (int i = 0; i < fields; i++, pos += 12) {
+            final String obf = this.string(this.buf.getInt(pos));
+            final String type = this.string(this.buf.getInt(pos + 4));
+            (type == null ? cls.getOrCreateFieldMapping(obf) : cls.getOrCreateFieldMapping(obf, type))
+                    .setDeobfuscatedName(this.string(this.buf.getInt(pos + 8)));
+        }
+
+        final int methods = this.buf.getInt(pos);
+        pos += 4;
+        for (int i = 0; i < methods; i++) {
+            final MethodMapping method = cls.getOrCreateMethodMapping(this.string(this.buf.getInt(pos)), this.string(this.buf.getInt(pos + 4)))
+                    .setDeobfuscatedName(this.string(this.buf.getInt(pos + 8)));
+            final int params = this.buf.getInt(pos + 12);
+            pos += 16;
+            for (int j = 0; j < params; j++, pos += 8)
+                method.getOrCreateParameterMapping(this.buf.getInt(pos)).setDeobfuscatedName(this.string(this.buf.getInt(pos + 4)));
+        }
+
+        final int inners = this.buf.getInt(pos);
+        pos += 4;
+        for (int i = 0; i < inners; i++) {
+            final ClassMapping<?, ?> inner = cls.getOrCreateInnerClassMapping(this.string(this.buf.getInt(pos)));
+            pos = this.readClass(pos + 4, inner);
+        }
+        return pos;
+    }
+
+    @Override
+    public TopLevelClassMapping createTopLevelClassMapping(final String obfuscatedName, final String deobfuscatedName) {
+        this.load(obfuscatedName);
+        return super.createTopLevelClassMapping(obfuscatedName, deobfuscatedName);
+    }
+
+    @Override
+    public Optional<TopLevelClassMapping> getTopLevelClassMapping(final String obfuscatedName) {
+        this.load(obfuscatedName);
+        return super.getTopLevelClassMapping(obfuscatedName);
+    }
+
+    @Override
+    public TopLevelClassMapping getOrCreateTopLevelClassMapping(final String obfuscatedName) {
+        this.load(obfuscatedName);
+        return super.getOrCreateTopLevelClassMapping(obfuscatedName);
+    }
+
+    @Override
+    public boolean hasTopLevelClassMapping(final String obfuscatedName) {
+        this.load(obfuscatedName);
+        return super.hasTopLevelClassMapping(obfuscatedName);
+    }
+
+    @Override
+    public Collection<TopLevelClassMapping> getTopLevelClassMappings() {
+        this.loadAll();
+        return super.getTopLevelClassMappings();
+    }
+
+    @Override
+    public Iterator<TopLevelClassMapping> iterator() {
+        this.loadAll();
+        return super.iterator();
+    }
+
+    @Override
+    public MappingSet reverse() {
+        this.loadAll();
+        return super.reverse();
+    }
+
+    @Override
+    public MappingSet copy() {
+        synchronized (this) {
+            final LazyMappingSet ret = new LazyMappingSet(this);
+            // Decoded classes may have been changed, such as completed, the others are still as compiled
+            ret.decoded.addAll(this.decoded);
+            for (TopLevelClassMapping cls : super.getTopLevelClassMappings())
+                cls.copy(ret);
+            return ret;
+        }
+    }
+
+}
@@ -0,0 +1,455 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.cache;
+
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.bombe.analysis.InheritanceType;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.vignette.jar.JarReader;
+import org.minecraftplus.jfr.Jfr;
+import org.minecraftplus.jfr.LibraryIndexEvent;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * An {@link InheritanceProvider} answering from a compiled index of the classes
+ * of a library jar, so the jar itself is neither opened nor parsed.
+ * <p>
+ * The index holds what {@link InheritanceProvider.ClassInfo} needs, the super
+ * types of every class and its members with their access flags. It is stored in
+ * a directory under the hash of the jar, built the first time a jar is seen and
+ * memory mapped by later runs. The hash is kept in a stamp file with the size and
+ * modification time of the jar, so it is only hashed again once they change.
+ * <p>
+ * Layout, all integers are big endian:
+ * <pre>
+ * int magic, int version
+ * int stringCount, int[stringCount + 1] stringOffsets, byte[] utf8Strings
+ * int classCount, (int name, int offset)[classCount], sorted by name
+ * class records: int access, int superName or -1,
+ *     int interfaceCount, int[interfaceCount] interfaces,
+ *     int fieldCount, (int access, int name, int desc)[fieldCount],
+ *     int methodCount, (int access, int name, int desc)[methodCount]
+ * </pre>
+ * Strings are referenced by their index in the string table.
+ */
+public final class LibraryIndex implements InheritanceProvider {
+
+    private static final int MAGIC = 0x564c4901;
+    private static final int VERSION = 1;
+
+    private final byte[] hash;
+    private final ByteBuffer buf;
+    private final int stringOffsets;
+    private final int stringData;
+    private final String[] strings;
+    private final int classes;
+    private final int classCount;
+    private final Map<String, ClassInfo> decoded = new ConcurrentHashMap<>();
+
+    private LibraryIndex(final byte[] hash, final ByteBuffer buf) {
+        this.hash = hash;
+        this.buf = buf;
+        final int stringCount = buf.getInt(8);
+        this.stringOffsets = 12;
+        this.stringData = this.stringOffsets + 4 * (stringCount + 1);
+        this.strings = new String[stringCount];
+        this.classes = this.stringData + buf.getInt(this.stringOffsets + 4 * stringCount);
+        this.classCount = buf.getInt(this.classes);
+    }
+
+    /**
+     * Opens the index of the given library from the given directory, building it
+     * first if the library was not indexed before.
+     */
+    public static LibraryIndex open(final Path library, final Path directory) throws IOException {
+        final LibraryIndexEvent event = Jfr.AVAILABLE ? new LibraryIndexEvent() : null;
+        if (event != null)
+            event.begin();
+
+        final byte[] hash = hash(library, directory);
+        final Path file = directory.resolve(Fingerprint.toHex(hash) + ".idx");
+
+        ByteBuffer buf = map(file);
+        final boolean built = buf == null;
+        if (built) {
+            write(read(library), file);
+            buf = map(file);
+            if (buf == null)
+                throw new IOException("Failed to index library " + library);
+        }
+        final LibraryIndex ret = new LibraryIndex(hash, buf);
+
+        if (event != null) {
+            event.library = library.toString();
+            event.classes = ret.classCount;
+            event.built = built;
+            event.commit();
+        }
+        return ret;
+    }
+
+    /**
+     * Builds the index of the given library in memory, for callers keeping it
+     * around themselves.
+     */
+    public static LibraryIndex build(final Path library) throws IOException {
+        final LibraryIndexEvent event = Jfr.AVAILABLE ? new LibraryIndexEvent() : null;
+        if (event != null)
+            event.begin();
+
+        final byte[] hash = new Fingerprint()
+                .addFile(library)
+                .build();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(out)) {
+            encode(read(library), data);
+        }
+        final LibraryIndex ret = new LibraryIndex(hash, ByteBuffer.wrap(out.toByteArray()));
+
+        if (event != null) {
+            event.library = library.toString();
+            event.classes = ret.classCount;
+            event.built = true;
+            event.commit();
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the hash of the given library from its stamp in the given directory,
+     * hashing it again only if its size or modification time changed.
+     */
+    private static byte[] hash(final Path library, final Path directory) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(library, BasicFileAttributes.class);
+        final long size = attributes.size();
+        final long time = attributes.lastModifiedTime().toMillis();
+        final byte[] key = new Fingerprint()
+                .add(library.toAbsolutePath().normalize().toString())
+                .build();
+        final Path stamp = directory.resolve(Fingerprint.toHex(key) + ".stamp");
+
+        if (Files.exists(stamp)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(stamp))) {
+                if (in.readLong() == size && in.readLong() == time) {
+                    final byte[] ret = new byte[32];
+                    in.readFully(ret);
+                    return ret;
+                }
+            } catch (IOException ex) {
+                // A broken stamp is written again
+            }
+        }
+
+        final byte[] ret = new Fingerprint()
+                .addFile(library)
+                .build();
+        Files.createDirectories(stamp.toAbsolutePath().getParent());
+        final Path temp = Files.createTempFile(stamp.toAbsolutePath().getParent(), stamp.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                out.writeLong(size);
+                out.writeLong(time);
+                out.write(ret);
+            }
+            try {
+                Files.move(temp, stamp, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, stamp, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return ret;
+    }
+
+    private static ByteBuffer map(final Path file) throws IOException {
+        if (Files.notExists(file))
+            return null;
+
+        final ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buf.capacity() < 12 || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+            return null;
+        return buf;
+    }
+
+    /**
+     * Gets the SHA-256 hash of the indexed library.
+     */
+    public byte[] getHash() {
+        return this.hash.clone();
+    }
+
+    @Override
+    public Optional<ClassInfo> provide(final String klass) {
+        final ClassInfo cached = this.decoded.get(klass);
+        if (cached != null)
+            return Optional.of(cached);
+
+        int low = 0;
+        int high = this.classCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int entry = this.classes + 4 + 8 * mid;
+            final int cmp = this.string(this.buf.getInt(entry)).compareTo(klass);
+            if (cmp < 0) {
+                low = mid + 1;
+            }
+            else if (cmp > 0) {
+                high = mid - 1;
+            }
+            else {
+                final ClassInfo info = this.decoded.computeIfAbsent(klass, k -> this.readClass(k, this.buf.getInt(entry + 4)));
+                return Optional.of(info);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private String string(final int index) {
+        if (index < 0)
+            return null;
+        String ret = this.strings[index];
+        if (ret == null) {
+            final int from = this.buf.getInt(this.stringOffsets + 4 * index);
+            final int to = this.buf.getInt(this.stringOffsets + 4 * (index + 1));
+            final byte[] bytes = new byte[to - from];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = this.buf.get(this.stringData + from + i);
+            this.strings[index] = ret = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return ret;
+    }
+
+    private ClassInfo readClass(final String name, int pos) {
+        final int access = this.buf.getInt(pos);
+        final String superName = this.string(this.buf.getInt(pos + 4));
+        pos += 8;
+
+        final int interfaceCount = this.buf.getInt(pos);
+        pos += 4;
+        final List<String> interfaces = new ArrayList<>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++, pos += 4)
+            interfaces.add(this.string(this.buf.getInt(pos)));
+
+        final int fieldCount = this.buf.getInt(pos);
+        pos += 4;
+        final Map<FieldSignature, InheritanceType> fields = new HashMap<>();
+        final Map<String, InheritanceType> fieldsByName = new HashMap<>();
+        for (int i = 0; i < fieldCount; i++, pos += 12) {
+            final InheritanceType type = InheritanceType.fromModifiers(this.buf.getInt(pos));
+            final String fieldName = this.string(this.buf.getInt(pos + 4));
+            fields.put(new FieldSignature(fieldName, FieldType.of(this.string(this.buf.getInt(pos + 8)))), type);
+            fieldsByName.put(fieldName, type);
+        }
+
+        final int methodCount = this.buf.getInt(pos);
+        pos += 4;
+        final Map<MethodSignature, InheritanceType> methods = new HashMap<>();
+        for (int i = 0; i < methodCount; i++, pos += 12) {
+            final InheritanceType type = InheritanceType.fromModifiers(this.buf.getInt(pos));
+            methods.put(new MethodSignature(this.string(this.buf.getInt(pos + 4)), MethodDescriptor.of(this.string(this.buf.getInt(pos + 8)))), type);
+        }
+
+        return new ClassInfo.Impl(name, (access & Opcodes.ACC_INTERFACE) != 0, superName, interfaces, fields, fieldsByName, methods);
+    }
+
+    /**
+     * Reads the classes of the given library in parallel, ordered by name.
+     */
+    private static List<IndexedClass> read(final Path library) throws IOException {
+        try (JarReader jar = JarReader.open(library)) {
+            // Versioned classes are not found by the class path either
+            return jar.getEntries().parallelStream()
+                    .filter(entry -> entry.getName().endsWith(".class") && !entry.getName().startsWith("META-INF/"))
+                    .map(entry -> {
+                        try {
+                            return IndexedClass.read(entry.read());
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    })
+                    .sorted(Comparator.comparing(cls -> cls.name))
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static void write(final List<IndexedClass> classes, final Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        final Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16))) {
+                encode(classes, data);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void encode(final List<IndexedClass> classes, final DataOutputStream data) throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final int[] names = new int[classes.size()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = index(strings, classes.get(i).name);
+        final int[][] records = new int[classes.size()][];
+        for (int i = 0; i < records.length; i++)
+            records[i] = classes.get(i).encode(strings);
+
+        final List<byte[]> encoded = new ArrayList<>(strings.size());
+        int poolSize = 0;
+        for (String value : strings.keySet()) {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            poolSize += bytes.length;
+        }
+        int offset = 8 + 4 + 4 * (encoded.size() + 1) + poolSize + 4 + 8 * names.length;
+
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+
+        data.writeInt(encoded.size());
+        int stringOffset = 0;
+        for (byte[] bytes : encoded) {
+            data.writeInt(stringOffset);
+            stringOffset += bytes.length;
+        }
+        data.writeInt(stringOffset);
+        for (byte[] bytes : encoded)
+            data.write(bytes);
+
+        data.writeInt(names.length);
+        for (int i = 0; i < names.length; i++) {
+            data.writeInt(names[i]);
+            data.writeInt(offset);
+            offset += 4 * records[i].length;
+        }
+        for (int[] record : records) {
+            for (int value : record)
+                data.writeInt(value);
+        }
+    }
+
+    private static int index(final Map<String, Integer> strings, final String value) {
+        if (value == null)
+            return -1;
+        return strings.computeIfAbsent(value, k -> strings.size());
+    }
+
+    /**
+     * A class read from a library, before it is written to the index.
+     */
+    private static final class IndexedClass {
+        String name;
+        int access;
+        String superName;
+        String[] interfaces;
+        final List<Member> fields = new ArrayList<>();
+        final List<Member> methods = new ArrayList<>();
+
+        static IndexedClass read(final byte[] data) {
+            final IndexedClass ret = new IndexedClass();
+            new ClassReader(data).accept(new ClassVisitor(Opcodes.ASM9) {
+                @Override
+                public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                    ret.name = name;
+                    ret.access = access;
+                    ret.superName = superName;
+                    ret.interfaces = interfaces == null ? new String[0] : interfaces;
+                }
+
+                @Override
+                public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                    ret.fields.add(new Member(access, name, descriptor));
+                    return null;
+                }
+
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                    ret.methods.add(new Member(access, name, descriptor));
+                    return null;
+                }
+            }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return ret;
+        }
+
+        int[] encode(final Map<String, Integer> strings) {
+            final int[] ret = new int[5 + this.interfaces.length + 3 * (this.fields.size() + this.methods.size())];
+            int pos = 0;
+            ret[pos++] = this.access;
+            ret[pos++] = index(strings, this.superName);
+            ret[pos++] = this.interfaces.length;
+            for (String itf : this.interfaces)
+                ret[pos++] = index(strings, itf);
+            for (List<Member> members : Arrays.asList(this.fields, this.methods)) {
+                ret[pos++] = members.size();
+                for (Member member : members) {
+                    ret[pos++] = member.access;
+                    ret[pos++] = index(strings, member.name);
+                    ret[pos++] = index(strings, member.descriptor);
+                }
+            }
+            return ret;
+        }
+    }
+
+    private static final class Member {
+        final int access;
+        final String name;
+        final String descriptor;
+
+        Member(final int access, final String name, final String descriptor) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+    }
+
+}
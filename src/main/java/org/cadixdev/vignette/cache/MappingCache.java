@@ -0,0 +1,226 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.cache;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.io.MappingFormat;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.InnerClassMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.MethodParameterMapping;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
+import org.minecraftplus.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles mapping files into a binary form stored next to them, so later runs
+ * don't have to parse the text again.
+ * <p>
+ * The compiled file starts with a hash of the mapping file and its format, and is
+ * only used while the hash matches. It is memory mapped and read through a
+ * {@link MappingSet} which decodes every top level class, with its members and
+ * inner classes, the first time it is looked up.
+ * <p>
+ * Layout, all integers are big endian:
+ * <pre>
+ * int magic, int version, byte[32] hash
+ * int stringCount, int[stringCount + 1] stringOffsets, byte[] utf8Strings
+ * int classCount, (int name, int offset)[classCount]
+ * class records: int deobf,
+ *     int fieldCount, (int obf, int type or -1, int deobf)[fieldCount],
+ *     int methodCount, (int obf, int desc, int deobf, int paramCount, (int index, int deobf)[paramCount])[methodCount],
+ *     int innerCount, (int obf, class record)[innerCount]
+ * </pre>
+ * Strings are referenced by their index in the string table.
+ */
+public final class MappingCache {
+
+    private static final int MAGIC = 0x564d4301;
+    private static final int VERSION = 1;
+    private static final int HASH_SIZE = 32;
+
+    private MappingCache() {
+    }
+
+    /**
+     * Gets the compiled file of the given mapping file.
+     */
+    public static Path getCacheFile(final Path mappings) {
+        return mappings.resolveSibling(mappings.getFileName() + ".vignette");
+    }
+
+    /**
+     * Reads the given mappings from their compiled file if it is up to date, otherwise
+     * they are parsed with the given format and compiled for later runs.
+     *
+     * @param log the log to report a failed write of the compiled file to
+     */
+    public static MappingSet read(final MappingFormat format, final Path mappings, final Log log) throws IOException {
+        final byte[] hash = new Fingerprint()
+                .add(format.toString())
+                .addFile(mappings)
+                .build();
+        final Path cache = getCacheFile(mappings);
+
+        final MappingSet cached = open(cache, hash);
+        if (cached != null)
+            return cached;
+
+        final MappingSet ret = format.read(mappings);
+        try {
+            write(ret, hash, cache);
+        } catch (IOException ex) {
+            // The cache is only an optimisation, the mappings were read fine
+            log.info("Failed to write mapping cache " + cache + ": " + ex);
+        }
+        return ret;
+    }
+
+    /**
+     * Opens the given compiled file, or returns {@code null} if it is missing or out of date.
+     */
+    static MappingSet open(final Path cache, final byte[] hash) throws IOException {
+        if (Files.notExists(cache))
+            return null;
+
+        final ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buf.capacity() < 8 + HASH_SIZE || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+            return null;
+        final byte[] stored = new byte[HASH_SIZE];
+        for (int i = 0; i < HASH_SIZE; i++)
+            stored[i] = buf.get(8 + i);
+        if (!Arrays.equals(stored, hash))
+            return null;
+
+        return new LazyMappingSet(buf, 8 + HASH_SIZE);
+    }
+
+    /**
+     * Compiles the given mappings into the given file.
+     */
+    static void write(final MappingSet mappings, final byte[] hash, final Path cache) throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(records);
+
+        final Collection<TopLevelClassMapping> classes = mappings.getTopLevelClassMappings();
+        final int[] names = new int[classes.size()];
+        final int[] offsets = new int[classes.size()];
+        int i = 0;
+        for (TopLevelClassMapping cls : classes) {
+            names[i] = index(strings, cls.getObfuscatedName());
+            offsets[i] = out.size();
+            writeClass(out, strings, cls);
+            i++;
+        }
+
+        final List<byte[]> encoded = new ArrayList<>(strings.size());
+        int poolSize = 0;
+        for (String value : strings.keySet()) {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            poolSize += bytes.length;
+        }
+        final int recordsStart = 8 + HASH_SIZE + 4 + 4 * (encoded.size() + 1) + poolSize + 4 + 8 * names.length;
+
+        Files.createDirectories(cache.toAbsolutePath().getParent());
+        final Path temp = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(temp);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.write(hash);
+
+                data.writeInt(encoded.size());
+                int offset = 0;
+                for (byte[] bytes : encoded) {
+                    data.writeInt(offset);
+                    offset += bytes.length;
+                }
+                data.writeInt(offset);
+                for (byte[] bytes : encoded)
+                    data.write(bytes);
+
+                data.writeInt(names.length);
+                for (int j = 0; j < names.length; j++) {
+                    data.writeInt(names[j]);
+                    data.writeInt(recordsStart + offsets[j]);
+                }
+                records.writeTo(data);
+            }
+            try {
+                Files.move(temp, cache, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeClass(final DataOutputStream out, final Map<String, Integer> strings, final ClassMapping<?, ?> cls) throws IOException {
+        out.writeInt(index(strings, cls.getDeobfuscatedName()));
+
+        final Collection<FieldMapping> fields = cls.getFieldMappings();
+        out.writeInt(fields.size());
+        for (FieldMapping field : fields) {
+            out.writeInt(index(strings, field.getObfuscatedName()));
+            out.writeInt(field.getType().map(type -> index(strings, type.toString())).orElse(-1));
+            out.writeInt(index(strings, field.getDeobfuscatedName()));
+        }
+
+        final Collection<MethodMapping> methods = cls.getMethodMappings();
+        out.writeInt(methods.size());
+        for (MethodMapping method : methods) {
+            out.writeInt(index(strings, method.getObfuscatedName()));
+            out.writeInt(index(strings, method.getObfuscatedDescriptor()));
+            out.writeInt(index(strings, method.getDeobfuscatedName()));
+            final Collection<MethodParameterMapping> params = method.getParameterMappings();
+            out.writeInt(params.size());
+            for (MethodParameterMapping param : params) {
+                out.writeInt(param.getIndex());
+                out.writeInt(index(strings, param.getDeobfuscatedName()));
+            }
+        }
+
+        final Collection<InnerClassMapping> inners = cls.getInnerClassMappings();
+        out.writeInt(inners.size());
+        for (InnerClassMapping inner : inners) {
+            out.writeInt(index(strings, inner.getObfuscatedName()));
+            writeClass(out, strings, inner);
+        }
+    }
+
+    private static int index(final Map<String, Integer> strings, final String value) {
+        return strings.computeIfAbsent(value, k -> strings.size());
+    }
+
+}
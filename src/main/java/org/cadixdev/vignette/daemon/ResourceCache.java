@@ -0,0 +1,151 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.daemon;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.io.MappingFormat;
+import org.cadixdev.vignette.cache.Fingerprint;
+import org.cadixdev.vignette.cache.LibraryIndex;
+import org.cadixdev.vignette.Vignette;
+import org.cadixdev.vignette.cache.MappingCache;
+import org.minecraftplus.CompactMappings;
+import org.minecraftplus.Log;
+import org.minecraftplus.srgprocessor.Dictionary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The mappings, dictionaries and libraries read by the jobs of a
+ * {@link VignetteDaemon}, kept for later jobs.
+ * <p>
+ * Resources are keyed by a hash of their contents, so a changed file is read
+ * again, and the least recently used ones are dropped once there are too many.
+ * Files are only hashed again once their size or modification time changes.
+ */
+public final class ResourceCache {
+
+    private static final int MAX_MAPPINGS = 4;
+    private static final int MAX_DICTIONARIES = 16;
+    private static final int MAX_LIBRARIES = 64;
+    private static final int MAX_HASHES = 256;
+
+    private final Lru<byte[]> hashes = new Lru<>(MAX_HASHES);
+    private final Lru<MappingSet> mappings = new Lru<>(MAX_MAPPINGS);
+    private final Lru<CompactMappings> compactMappings = new Lru<>(MAX_MAPPINGS);
+    private final Lru<Dictionary> dictionaries = new Lru<>(MAX_DICTIONARIES);
+    private final Lru<LibraryIndex> libraries = new Lru<>(MAX_LIBRARIES);
+
+    /**
+     * Gets the given mappings, shared by all jobs so they must only remap with
+     * copies of them.
+     *
+     * @param compile whether the mappings are read through a {@link MappingCache}
+     * @param log the log of the job reading them
+     */
+    public MappingSet getMappings(final MappingFormat format, final Path path, final boolean compile, final Log log) throws IOException {
+        final String key = format + ":" + Fingerprint.toHex(this.getHash(path));
+        return this.mappings.get(key, () -> Vignette.readMappings(format, path, compile, log));
+    }
+
+    /**
+     * Gets the given mappings as {@link CompactMappings}, which are never changed
+     * so all jobs remap with them directly.
+     */
+    public CompactMappings getCompactMappings(final MappingFormat format, final Path path) throws IOException {
+        final String key = format + ":" + Fingerprint.toHex(this.getHash(path));
+        return this.compactMappings.get(key, () -> Vignette.readCompactMappings(format, path));
+    }
+
+    /**
+     * Gets the given dictionary.
+     */
+    public Dictionary getDictionary(final Path path) throws IOException {
+        return this.dictionaries.get(Fingerprint.toHex(this.getHash(path)), () -> {
+            try (InputStream in = Files.newInputStream(path)) {
+                return new Dictionary().load(in);
+            }
+        });
+    }
+
+    /**
+     * Gets the index of the given library.
+     */
+    public LibraryIndex getLibrary(final Path path) throws IOException {
+        return this.libraries.get(Fingerprint.toHex(this.getHash(path)), () -> LibraryIndex.build(path));
+    }
+
+    /**
+     * Gets the SHA-256 hash of the given file.
+     */
+    public byte[] getHash(final Path path) throws IOException {
+        final String key = path.toAbsolutePath() + ":" + Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis();
+        return this.hashes.get(key, () -> new Fingerprint().addFile(path).build());
+    }
+
+    @FunctionalInterface
+    private interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    /**
+     * A least recently used cache, only loading every key once when it is
+     * requested by several jobs at the same time.
+     */
+    private static final class Lru<V> {
+        private final Map<String, CompletableFuture<V>> entries;
+
+        Lru(final int max) {
+            this.entries = new LinkedHashMap<String, CompletableFuture<V>>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, CompletableFuture<V>> eldest) {
+                    return this.size() > max;
+                }
+            };
+        }
+
+        V get(final String key, final Loader<V> loader) throws IOException {
+            final CompletableFuture<V> future;
+            final boolean load;
+            synchronized (this.entries) {
+                final CompletableFuture<V> existing = this.entries.get(key);
+                load = existing == null;
+                future = load ? new CompletableFuture<>() : existing;
+                if (load)
+                    this.entries.put(key, future);
+            }
+
+            if (load) {
+                try {
+                    future.complete(loader.load());
+                } catch (IOException | RuntimeException ex) {
+                    // Not kept, so the next job tries again
+                    synchronized (this.entries) {
+                        this.entries.remove(key, future);
+                    }
+                    future.completeExceptionally(ex);
+                    throw ex;
+                }
+            }
+
+            try {
+                return future.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof IOException)
+                    throw (IOException) ex.getCause();
+                throw ex;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Submits jobs to a {@link VignetteDaemon}.
+ */
+public final class VignetteClient {
+
+    private VignetteClient() {
+    }
+
+    /**
+     * Runs a job on the daemon listening on the given port, and waits for it to
+     * finish. The token of the daemon is read from {@link VignetteDaemon#getTokenFile(int)}.
+     *
+     * @param workingDirectory the directory relative paths in the arguments are resolved against
+     * @param out receives the output of the job
+     * @return the exit status of the job
+     */
+    public static int submit(final int port, final Path workingDirectory, final String[] args, final PrintStream out) throws IOException {
+        final String token = readToken(port);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+             DataInputStream reply = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            request.writeUTF(token);
+            request.writeByte(VignetteDaemon.JOB);
+            request.writeUTF(workingDirectory.toAbsolutePath().toString());
+            request.writeInt(args.length);
+            for (String arg : args)
+                request.writeUTF(arg);
+            request.flush();
+
+            byte[] buf = new byte[1 << 12];
+            while (true) {
+                final int type = reply.readByte();
+                if (type == VignetteDaemon.OUTPUT) {
+                    final int len = reply.readInt();
+                    if (len > buf.length)
+                        buf = new byte[len];
+                    reply.readFully(buf, 0, len);
+                    out.write(buf, 0, len);
+                }
+                else if (type == VignetteDaemon.EXIT) {
+                    out.flush();
+                    return reply.readInt();
+                }
+                else {
+                    throw new IOException("Unknown reply from daemon: " + type);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the daemon listening on the given port, it finishes the running jobs
+     * and deletes its token file.
+     */
+    public static void stop(final int port) throws IOException {
+        final String token = readToken(port);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+             DataInputStream reply = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            request.writeUTF(token);
+            request.writeByte(VignetteDaemon.STOP);
+            request.flush();
+            if (reply.readByte() != VignetteDaemon.EXIT || reply.readInt() != 0)
+                throw new IOException("Unknown reply from daemon");
+        }
+    }
+
+    private static String readToken(final int port) throws IOException {
+        try {
+            return new String(Files.readAllBytes(VignetteDaemon.getTokenFile(port)), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException ex) {
+            throw new IOException("No daemon of this user is running on port " + port, ex);
+        }
+    }
+
+}
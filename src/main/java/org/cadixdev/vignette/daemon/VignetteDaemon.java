@@ -0,0 +1,287 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.daemon;
+
+import org.cadixdev.vignette.cache.Fingerprint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the jobs submitted by {@link VignetteClient}s in a single long running
+ * process, sharing a {@link ResourceCache} between them.
+ * <p>
+ * The daemon only listens on the loopback address. On start it writes a random
+ * token to a file only its user may read, see {@link #getTokenFile(int)}, and
+ * connections not sending that token first are closed, so other users of the
+ * machine can't run jobs with the permissions of the daemon. A client sends the
+ * token, its working directory and arguments, the daemon replies with the output
+ * of the job followed by its exit status:
+ * <pre>
+ * request: utf token, byte 0, utf workingDirectory, int argCount, utf[argCount] args
+ * reply:   (byte 0, int length, byte[length] output)*, byte 1, int status
+ * </pre>
+ * A client may also stop the daemon, it then finishes the running jobs and exits:
+ * <pre>
+ * request: utf token, byte 1
+ * reply:   byte 1, int 0
+ * </pre>
+ * The token file is deleted when the daemon is closed, stopped, or its process
+ * is shut down.
+ */
+public final class VignetteDaemon implements Closeable {
+
+    static final int OUTPUT = 0;
+    static final int EXIT = 1;
+    static final int JOB = 0;
+    static final int STOP = 1;
+
+    // Clients have this long to send the token
+    private static final int TOKEN_TIMEOUT = 10000;
+
+    private final ServerSocket socket;
+    private final byte[] token;
+    private final Path tokenFile;
+    // Deletes the token file when the process is killed
+    private final Thread shutdownHook;
+    private final Job job;
+    private final ResourceCache resources = new ResourceCache();
+    private final ExecutorService executor = Executors.newCachedThreadPool(task -> {
+        final Thread thread = new Thread(task, "Vignette Job");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a daemon listening on the given port of the loopback address.
+     *
+     * @param port the port, or {@code 0} for any free port
+     * @param job runs a job
+     */
+    public VignetteDaemon(final int port, final Job job) throws IOException {
+        this.socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.job = job;
+
+        final byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        final String token = Fingerprint.toHex(random);
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.tokenFile = getTokenFile(this.getPort());
+        try {
+            writeToken(this.tokenFile, token);
+        } catch (IOException ex) {
+            this.socket.close();
+            throw ex;
+        }
+        this.shutdownHook = new Thread(() -> {
+            try {
+                Files.deleteIfExists(this.tokenFile);
+            } catch (IOException ex) {
+                // The process is exiting anyway
+            }
+        }, "Vignette Daemon Shutdown");
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+    }
+
+    public int getPort() {
+        return this.socket.getLocalPort();
+    }
+
+    /**
+     * Gets the file the daemon on the given port writes its token to, in the
+     * {@code .vignette} directory of the home of the user.
+     */
+    public static Path getTokenFile(final int port) {
+        return Paths.get(System.getProperty("user.home"), ".vignette", "daemon-" + port + ".token");
+    }
+
+    private static void writeToken(final Path file, final String token) throws IOException {
+        final boolean posix = file.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (posix) {
+            Files.createDirectories(file.getParent(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        }
+        else {
+            Files.createDirectories(file.getParent());
+        }
+
+        // Only readable by the owner before the token is written, and replaced at once
+        final Path temp = posix
+                ? Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                : Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, token.getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Accepts jobs until the daemon is closed or stopped, every job runs on its
+     * own thread. Once stopped, waits for the running jobs to finish.
+     */
+    public void run() throws IOException {
+        while (!this.socket.isClosed()) {
+            final Socket client;
+            try {
+                client = this.socket.accept();
+            } catch (SocketException ex) {
+                if (this.socket.isClosed())
+                    break;
+                throw ex;
+            }
+            this.executor.execute(() -> this.handle(client));
+        }
+
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for jobs");
+        }
+    }
+
+    private void handle(final Socket client) {
+        try (Socket socket = client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setSoTimeout(TOKEN_TIMEOUT);
+            if (!MessageDigest.isEqual(this.token, in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+                System.err.println("Rejected a client without the daemon token");
+                return;
+            }
+            socket.setSoTimeout(0);
+
+            if (in.readByte() == STOP) {
+                out.writeByte(EXIT);
+                out.writeInt(0);
+                out.flush();
+                this.close();
+                return;
+            }
+
+            final Path workingDirectory = Paths.get(in.readUTF());
+            final String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++)
+                args[i] = in.readUTF();
+
+            final PrintStream print = new PrintStream(new OutputFrames(out), true, "UTF-8");
+            int status;
+            try {
+                status = this.job.run(args, workingDirectory, print, print, this.resources);
+            } catch (Throwable ex) {
+                ex.printStackTrace(print);
+                status = 1;
+            }
+            print.flush();
+
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(status);
+                out.flush();
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to run job: " + ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.socket.close();
+            this.executor.shutdown();
+        } finally {
+            Files.deleteIfExists(this.tokenFile);
+            try {
+                Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+            } catch (IllegalStateException ex) {
+                // Already shutting down, the hook deletes the file too
+            }
+        }
+    }
+
+    /**
+     * Runs a single job.
+     */
+    @FunctionalInterface
+    public interface Job {
+
+        /**
+         * Runs a job with the given arguments.
+         *
+         * @param workingDirectory the working directory of the client, relative paths are resolved against it
+         * @param resources the resources shared with other jobs
+         * @return the exit status
+         */
+        int run(String[] args, Path workingDirectory, PrintStream out, PrintStream err, ResourceCache resources);
+
+    }
+
+    /**
+     * Sends everything written as output frames.
+     */
+    private static final class OutputFrames extends OutputStream {
+        private final DataOutputStream out;
+
+        OutputFrames(final DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0)
+                return;
+            synchronized (this.out) {
+                this.out.writeByte(OUTPUT);
+                this.out.writeInt(len);
+                this.out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (this.out) {
+                this.out.flush();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.jar;
+
+import org.cadixdev.bombe.jar.AbstractJarEntry;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.cadixdev.bombe.jar.JarManifestEntry;
+import org.cadixdev.bombe.jar.JarResourceEntry;
+import org.cadixdev.bombe.jar.JarServiceProviderConfigurationEntry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link JarEntryTransformer} handing every entry produced by the wrapped
+ * transformer, additions included, to a consumer instead of returning it.
+ * <p>
+ * This lets the worker threads running the transformers hand every entry to
+ * the {@link JarWriter} straight away.
+ */
+public final class CollectingTransformer implements JarEntryTransformer {
+
+    private final JarEntryTransformer transformer;
+    private final Consumer<AbstractJarEntry> consumer;
+
+    public CollectingTransformer(final JarEntryTransformer transformer, final Consumer<AbstractJarEntry> consumer) {
+        this.transformer = transformer;
+        this.consumer = consumer;
+    }
+
+    private <T extends AbstractJarEntry> T collect(final T entry) {
+        if (entry != null)
+            this.consumer.accept(entry);
+        return null;
+    }
+
+    @Override
+    public JarClassEntry transform(final JarClassEntry entry) {
+        return this.collect(this.transformer.transform(entry));
+    }
+
+    @Override
+    public JarManifestEntry transform(final JarManifestEntry entry) {
+        return this.collect(this.transformer.transform(entry));
+    }
+
+    @Override
+    public JarServiceProviderConfigurationEntry transform(final JarServiceProviderConfigurationEntry entry) {
+        return this.collect(this.transformer.transform(entry));
+    }
+
+    @Override
+    public JarResourceEntry transform(final JarResourceEntry entry) {
+        return this.collect(this.transformer.transform(entry));
+    }
+
+    @Override
+    public List<AbstractJarEntry> additions() {
+        this.transformer.additions().forEach(this::collect);
+        return Collections.emptyList();
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.jar;
+
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.bombe.analysis.InheritanceType;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link InheritanceProvider} reading the classes of jars opened by
+ * {@link JarReader}s, the first jar having a class wins, like on the class path.
+ * <p>
+ * Classes are only read once they are asked for, and are cached.
+ */
+public final class JarInheritanceProvider implements InheritanceProvider {
+
+    private final List<JarReader> jars;
+    private final Map<String, Optional<ClassInfo>> classes = new ConcurrentHashMap<>();
+
+    public JarInheritanceProvider(final List<JarReader> jars) {
+        this.jars = new ArrayList<>(jars);
+    }
+
+    @Override
+    public Optional<ClassInfo> provide(final String klass) {
+        // Plain get first, computeIfAbsent locks even when the value is present
+        final Optional<ClassInfo> cached = this.classes.get(klass);
+        if (cached != null)
+            return cached;
+        return this.classes.computeIfAbsent(klass, this::read);
+    }
+
+    private Optional<ClassInfo> read(final String klass) {
+        for (JarReader jar : this.jars) {
+            final JarReader.Entry entry = jar.getEntry(klass + ".class");
+            if (entry == null)
+                continue;
+            try {
+                return Optional.of(read(entry.read()));
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to read class " + klass, ex);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static ClassInfo read(final byte[] data) {
+        final ClassInfo[] ret = new ClassInfo[1];
+        new ClassReader(data).accept(new ClassVisitor(Opcodes.ASM9) {
+            private String name;
+            private boolean isInterface;
+            private String superName;
+            private List<String> interfaces;
+            private final Map<FieldSignature, InheritanceType> fields = new HashMap<>();
+            private final Map<String, InheritanceType> fieldsByName = new HashMap<>();
+            private final Map<MethodSignature, InheritanceType> methods = new HashMap<>();
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                this.name = name;
+                this.isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+                this.superName = superName;
+                this.interfaces = interfaces == null ? Collections.emptyList() : Arrays.asList(interfaces);
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                final InheritanceType type = InheritanceType.fromModifiers(access);
+                this.fields.put(new FieldSignature(name, FieldType.of(descriptor)), type);
+                this.fieldsByName.put(name, type);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                this.methods.put(new MethodSignature(name, MethodDescriptor.of(descriptor)), InheritanceType.fromModifiers(access));
+                return null;
+            }
+
+            @Override
+            public void visitEnd() {
+                ret[0] = new ClassInfo.Impl(this.name, this.isInterface, this.superName, this.interfaces, this.fields, this.fieldsByName, this.methods);
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return ret[0];
+    }
+
+}
@@ -0,0 +1,448 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.jar;
+
+import org.cadixdev.bombe.jar.AbstractJarEntry;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarManifestEntry;
+import org.cadixdev.bombe.jar.JarResourceEntry;
+import org.cadixdev.bombe.jar.JarServiceProviderConfigurationEntry;
+import org.cadixdev.bombe.jar.ServiceProviderConfiguration;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the input jars of Vignette.
+ * <p>
+ * The jar is memory mapped and only its central directory is parsed when it is
+ * opened. Entries are inflated when they are {@link Entry#read() read}, on the
+ * thread reading them, so the transformation threads share the work of
+ * inflating, and start transforming before the whole jar is read.
+ * <p>
+ * Jars too large to be mapped at once are read through their channel instead.
+ * Entries may be read from multiple threads. Closing the reader waits for the
+ * entries being read, then unmaps the jar, so it isn't left locked on Windows.
+ */
+public final class JarReader implements Closeable {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final int ZIP64_END_HEADER = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ENCRYPTED_FLAG = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int EXTENDED_TIMESTAMP_EXTRA = 0x5455;
+
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final String SERVICES = "META-INF/services/";
+
+    private final FileChannel channel;
+    private final ByteBuffer data;
+    private final long size;
+    private final List<Entry> entries;
+    private final Map<String, Entry> byName;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(this::createInflater);
+    // Every inflater of the thread locals, to end them once the reader is closed
+    private final Queue<Inflater> allInflaters = new ConcurrentLinkedQueue<>();
+    // Entries are read under the read lock, so the jar is never unmapped while it is read
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    private JarReader(final FileChannel channel, final ByteBuffer data, final long size) throws IOException {
+        this.channel = channel;
+        this.data = data;
+        this.size = size;
+        this.entries = Collections.unmodifiableList(this.readCentralDirectory());
+        this.byName = new HashMap<>(this.entries.size() * 2);
+        for (Entry entry : this.entries)
+            this.byName.putIfAbsent(entry.name, entry);
+    }
+
+    /**
+     * Opens the given jar, it stays mapped until the reader is closed.
+     */
+    public static JarReader open(final Path jar) throws IOException {
+        final FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ);
+        boolean keepOpen = false;
+        try {
+            final long size = channel.size();
+            if (size <= Integer.MAX_VALUE)
+                return new JarReader(null, channel.map(FileChannel.MapMode.READ_ONLY, 0, size), size);
+            final JarReader ret = new JarReader(channel, null, size);
+            keepOpen = true;
+            return ret;
+        } finally {
+            // A mapping stays valid without its channel
+            if (!keepOpen)
+                channel.close();
+        }
+    }
+
+    /**
+     * Reads a jar held in memory, such as a nested jar.
+     */
+    public static JarReader read(final byte[] jar) throws IOException {
+        return new JarReader(null, ByteBuffer.wrap(jar), jar.length);
+    }
+
+    /**
+     * Gets the size of the jar in bytes.
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the entries of the jar in the order of its central directory,
+     * directories excluded.
+     */
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Gets the entry of the given name, or {@code null} if the jar has none.
+     */
+    public Entry getEntry(final String name) {
+        return this.byName.get(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            if (this.closed)
+                return;
+            this.closed = true;
+            for (Inflater inflater; (inflater = this.allInflaters.poll()) != null; )
+                inflater.end();
+            if (this.channel != null)
+                this.channel.close();
+            if (this.data instanceof MappedByteBuffer)
+                unmap(this.data);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private Inflater createInflater() {
+        final Inflater ret = new Inflater(true);
+        this.allInflaters.add(ret);
+        return ret;
+    }
+
+    /**
+     * Releases the mapping of the given buffer right away, rather than once it is
+     * collected. It is best effort, the JVM may not allow it.
+     */
+    private static void unmap(final ByteBuffer buffer) {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException ex) {
+                invokeCleaner = null;
+            }
+            if (invokeCleaner != null) {
+                // Java 9 and later
+                final Field unsafe = unsafeClass.getDeclaredField("theUnsafe");
+                unsafe.setAccessible(true);
+                invokeCleaner.invoke(unsafe.get(null), buffer);
+            }
+            else {
+                // Java 8
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null)
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // The mapping is released once the buffer is collected instead
+        }
+    }
+
+    /**
+     * Gets a little endian view of the given range of the jar.
+     */
+    private ByteBuffer region(final long offset, final int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > this.size)
+            throw new ZipException("Invalid jar, range out of bounds");
+        if (this.data != null) {
+            final ByteBuffer ret = this.data.duplicate();
+            ret.limit((int) offset + length).position((int) offset);
+            return ret.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        final ByteBuffer ret = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (ret.hasRemaining()) {
+            if (this.channel.read(ret, offset + ret.position()) < 0)
+                throw new ZipException("Invalid jar, unexpected end of file");
+        }
+        ret.flip();
+        return ret;
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        // The end record is followed by a comment of up to 64k
+        final int tailLength = (int) Math.min(this.size, END_SIZE + 0xFFFF);
+        final long tailOffset = this.size - tailLength;
+        final ByteBuffer tail = this.region(tailOffset, tailLength);
+        int end = tailLength - END_SIZE;
+        while (end >= 0 && tail.getInt(end) != END_HEADER)
+            end--;
+        if (end < 0)
+            throw new ZipException("Invalid jar, no end of central directory");
+
+        long count = tail.getShort(end + 10) & 0xFFFF;
+        long cdSize = tail.getInt(end + 12) & ZIP64_MAGIC;
+        long cdOffset = tail.getInt(end + 16) & ZIP64_MAGIC;
+
+        final long locator = tailOffset + end - ZIP64_LOCATOR_SIZE;
+        if (locator >= 0) {
+            final ByteBuffer zip64 = this.region(locator, ZIP64_LOCATOR_SIZE);
+            if (zip64.getInt(0) == ZIP64_LOCATOR) {
+                final ByteBuffer record = this.region(zip64.getLong(8), 56);
+                if (record.getInt(0) != ZIP64_END_HEADER)
+                    throw new ZipException("Invalid jar, no zip64 end of central directory");
+                count = record.getLong(32);
+                cdSize = record.getLong(40);
+                cdOffset = record.getLong(48);
+            }
+        }
+        if (cdSize > Integer.MAX_VALUE || count > cdSize / 46)
+            throw new ZipException("Invalid jar, central directory too large");
+
+        final ByteBuffer cd = this.region(cdOffset, (int) cdSize);
+        final List<Entry> ret = new ArrayList<>((int) count);
+        int pos = 0;
+        for (long i = 0; i < count; i++) {
+            if (pos + 46 > cd.limit() || cd.getInt(pos) != CENTRAL_HEADER)
+                throw new ZipException("Invalid jar, bad central directory entry");
+            final int flags = cd.getShort(pos + 8) & 0xFFFF;
+            final int method = cd.getShort(pos + 10) & 0xFFFF;
+            final int dosTime = cd.getInt(pos + 12);
+            long compressedSize = cd.getInt(pos + 20) & ZIP64_MAGIC;
+            long size = cd.getInt(pos + 24) & ZIP64_MAGIC;
+            final int nameLength = cd.getShort(pos + 28) & 0xFFFF;
+            final int extraLength = cd.getShort(pos + 30) & 0xFFFF;
+            final int commentLength = cd.getShort(pos + 32) & 0xFFFF;
+            long offset = cd.getInt(pos + 42) & ZIP64_MAGIC;
+            if (pos + 46 + nameLength + extraLength > cd.limit())
+                throw new ZipException("Invalid jar, bad central directory entry");
+
+            final byte[] name = new byte[nameLength];
+            cd.position(pos + 46);
+            cd.get(name);
+
+            long time = dosToJavaTime(dosTime);
+            int extra = pos + 46 + nameLength;
+            final int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                final int tag = cd.getShort(extra) & 0xFFFF;
+                final int length = cd.getShort(extra + 2) & 0xFFFF;
+                int field = extra + 4;
+                if (field + length > extraEnd)
+                    break;
+                if (tag == ZIP64_EXTRA) {
+                    // Only the values not fitting the header are given, in this order
+                    if (size == ZIP64_MAGIC && field + 8 <= extra + 4 + length) {
+                        size = cd.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC && field + 8 <= extra + 4 + length) {
+                        compressedSize = cd.getLong(field);
+                        field += 8;
+                    }
+                    if (offset == ZIP64_MAGIC && field + 8 <= extra + 4 + length)
+                        offset = cd.getLong(field);
+                }
+                else if (tag == EXTENDED_TIMESTAMP_EXTRA && length >= 5 && (cd.get(field) & 1) != 0) {
+                    time = (cd.getInt(field + 1) & ZIP64_MAGIC) * 1000;
+                }
+                extra += 4 + length;
+            }
+            pos = extraEnd + commentLength;
+
+            final String path = new String(name, StandardCharsets.UTF_8);
+            if (path.endsWith("/"))
+                continue;
+            if ((flags & ENCRYPTED_FLAG) != 0)
+                throw new ZipException("Encrypted entry " + path + " is not supported");
+            if (size > Integer.MAX_VALUE || compressedSize > Integer.MAX_VALUE)
+                throw new ZipException("Entry " + path + " is too large");
+            ret.add(new Entry(path, time, method, (int) compressedSize, (int) size, offset));
+        }
+        return ret;
+    }
+
+    /**
+     * Converts a DOS time leniently like {@link java.util.zip.ZipFile}, fields out of
+     * their range, such as the 31st of February, overflow into the next ones.
+     */
+    private static long dosToJavaTime(final int time) {
+        final LocalDateTime date = LocalDateTime.of(((time >> 25) & 0x7F) + 1980, 1, 1, 0, 0)
+                .plusMonths(((time >> 21) & 0x0F) - 1)
+                .plusDays(((time >> 16) & 0x1F) - 1)
+                .plusHours((time >> 11) & 0x1F)
+                .plusMinutes((time >> 5) & 0x3F)
+                .plusSeconds((time << 1) & 0x3E);
+        return date.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * An entry of the jar, read from its central directory.
+     */
+    public final class Entry {
+        private final String name;
+        private final long time;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+        private final long offset;
+
+        Entry(final String name, final long time, final int method, final int compressedSize, final int size, final long offset) {
+            this.name = name;
+            this.time = time;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getTime() {
+            return this.time;
+        }
+
+        /**
+         * Gets the uncompressed size of the entry in bytes.
+         */
+        public int getSize() {
+            return this.size;
+        }
+
+        /**
+         * Reads and inflates the contents of the entry, on the calling thread.
+         */
+        public byte[] read() throws IOException {
+            JarReader.this.lock.readLock().lock();
+            try {
+                if (JarReader.this.closed)
+                    throw new ClosedChannelException();
+                return this.readOpen();
+            } finally {
+                JarReader.this.lock.readLock().unlock();
+            }
+        }
+
+        private byte[] readOpen() throws IOException {
+            final ByteBuffer header = JarReader.this.region(this.offset, 30);
+            if (header.getInt(0) != LOCAL_HEADER)
+                throw new ZipException("Invalid jar, bad local header of " + this.name);
+            // The local header may have other extra data than the central directory
+            final long start = this.offset + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+            final ByteBuffer data = JarReader.this.region(start, this.compressedSize);
+
+            if (this.method == ZipEntry.STORED) {
+                final byte[] ret = new byte[this.compressedSize];
+                data.get(ret);
+                return ret;
+            }
+            if (this.method != ZipEntry.DEFLATED)
+                throw new ZipException("Unsupported compression method " + this.method + " of " + this.name);
+
+            // Raw inflaters may need a dummy byte after the data
+            final byte[] input = new byte[this.compressedSize + 1];
+            data.get(input, 0, this.compressedSize);
+            final byte[] ret = new byte[this.size];
+            final Inflater inflater = JarReader.this.inflaters.get();
+            inflater.reset();
+            inflater.setInput(input);
+            try {
+                int len = 0;
+                while (len < ret.length && !inflater.finished()) {
+                    final int read = inflater.inflate(ret, len, ret.length - len);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    len += read;
+                }
+                if (len != ret.length)
+                    throw new ZipException("Invalid jar, bad size of " + this.name);
+            } catch (DataFormatException ex) {
+                throw new ZipException("Invalid jar, bad data of " + this.name + ": " + ex.getMessage());
+            }
+            return ret;
+        }
+
+        /**
+         * Reads the entry as the kind of jar entry transformers expect, like Atlas
+         * does: the manifest, service provider configurations, classes and other
+         * resources.
+         */
+        public AbstractJarEntry toJarEntry() throws IOException {
+            final byte[] data = this.read();
+            if (this.name.equals(MANIFEST))
+                return new JarManifestEntry(this.time, new Manifest(new ByteArrayInputStream(data)));
+            if (this.name.startsWith(SERVICES) && this.name.indexOf('/', SERVICES.length()) < 0)
+                return new JarServiceProviderConfigurationEntry(this.time, readServices(this.name.substring(SERVICES.length()), data));
+            if (this.name.endsWith(".class"))
+                return new JarClassEntry(this.name, this.time, data);
+            return new JarResourceEntry(this.name, this.time, data);
+        }
+    }
+
+    private static ServiceProviderConfiguration readServices(final String service, final byte[] data) {
+        final List<String> providers = new ArrayList<>();
+        for (String line : new String(data, StandardCharsets.UTF_8).split("\r\n|\r|\n")) {
+            final int comment = line.indexOf('#');
+            if (comment >= 0)
+                line = line.substring(0, comment);
+            line = line.trim();
+            if (!line.isEmpty())
+                providers.add(line);
+        }
+        return new ServiceProviderConfiguration(service, providers);
+    }
+
+}
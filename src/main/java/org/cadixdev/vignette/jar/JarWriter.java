@@ -0,0 +1,422 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.jar;
+
+import org.cadixdev.bombe.jar.AbstractJarEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes the output jar of Vignette.
+ * <p>
+ * Entries are compressed as they are added, on the thread adding them, so the
+ * transformation threads share the work of deflating. Compressed entries are
+ * streamed to a spool file as soon as they are done, so only their headers are
+ * kept in memory, and are then copied to the output by the file system in one
+ * pass, always in the same order.
+ * <p>
+ * Stable jars, as used by {@code --stable}, attempt to change less for the same
+ * given inputs: every entry gets the same fixed time, and entries are sorted by
+ * path with the {@code META-INF} directory and the manifest placed last.
+ * Otherwise entries keep their time, and the manifest is placed first.
+ */
+public final class JarWriter implements Closeable {
+
+    /**
+     * The time of every entry of stable jars, Java 8 screws up on 0 time, so use another static time.
+     */
+    public static final long STABLE_TIME = 628041600000L;
+
+    private static final List<String> SPECIAL = Arrays.asList("/META-INF", "/META-INF/MANIFEST.MF");
+
+    /**
+     * Orders paths of stable jars in their "/" prefixed form, directories without a trailing slash.
+     */
+    static final Comparator<String> STABLE_ORDER = order(1);
+
+    /**
+     * Orders paths of other jars, the manifest goes first so it can be found by {@link java.util.jar.JarInputStream}.
+     */
+    static final Comparator<String> ORDER = order(-1);
+
+    private static Comparator<String> order(final int special) {
+        return (left, right) -> {
+            boolean containsLeft = SPECIAL.contains(left);
+            boolean containsRight = SPECIAL.contains(right);
+            if (containsLeft && containsRight) {
+                return Integer.compare(SPECIAL.indexOf(left), SPECIAL.indexOf(right));
+            }
+            if (containsLeft)
+                return special;
+            if (containsRight)
+                return -special;
+            return left.compareTo(right);
+        };
+    }
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final int ZIP64_END_HEADER = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private final boolean stable;
+    private final int method;
+    private final ThreadLocal<Deflater> deflaters;
+    // Every deflater of the thread locals, to end them once the writer is closed
+    private final Queue<Deflater> allDeflaters = new ConcurrentLinkedQueue<>();
+    private final long now = System.currentTimeMillis();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final FileChannel spool;
+    private final AtomicLong spoolSize = new AtomicLong();
+
+    /**
+     * Creates a writer.
+     *
+     * @param stable whether to write a stable jar
+     * @param method the compression method, {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+     * @param level the compression level of {@link ZipEntry#DEFLATED}, as accepted by {@link Deflater}
+     */
+    public JarWriter(final boolean stable, final int method, final int level) throws IOException {
+        if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED)
+            throw new IllegalArgumentException("Invalid compression method: " + method);
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        this.stable = stable;
+        this.method = method;
+        this.deflaters = ThreadLocal.withInitial(() -> {
+            final Deflater ret = new Deflater(level, true);
+            this.allDeflaters.add(ret);
+            return ret;
+        });
+        this.spool = FileChannel.open(Files.createTempFile("vignette", ".spool"),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Creates a writer, deflating entries with the default level.
+     */
+    public JarWriter(final boolean stable) throws IOException {
+        this(stable, ZipEntry.DEFLATED, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Adds and compresses the given entry, and streams it to the spool file,
+     * may be called from multiple threads.
+     *
+     * @throws UncheckedIOException if the spool file can't be written
+     */
+    public void add(final AbstractJarEntry entry) {
+        final long time = this.stable ? STABLE_TIME : entry.getTime() < 0 ? this.now : entry.getTime();
+        try {
+            this.entries.put(entry.getName(), this.spool(this.compress(time, entry.getContents())));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to spool " + entry.getName(), ex);
+        }
+    }
+
+    /**
+     * Writes the data of the given entry to its own range of the spool file, and drops it.
+     */
+    private Entry spool(final Entry entry) throws IOException {
+        final long offset = this.spoolSize.getAndAdd(entry.length);
+        final ByteBuffer buf = ByteBuffer.wrap(entry.data, 0, entry.length);
+        while (buf.hasRemaining())
+            this.spool.write(buf, offset + buf.position());
+        return new Entry(entry.time, entry.method, entry.crc, entry.size, null, entry.length, offset);
+    }
+
+    private Entry compress(final long time, final byte[] data) {
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if (this.method == ZipEntry.STORED)
+            return new Entry(time, ZipEntry.STORED, (int) crc.getValue(), data.length, data, data.length);
+
+        final Deflater deflater = this.deflaters.get();
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buf = new byte[Math.max(64, data.length + (data.length >> 3))];
+        int len = 0;
+        while (!deflater.finished()) {
+            if (len == buf.length)
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            len += deflater.deflate(buf, len, buf.length - len);
+        }
+        // Keep whatever is smaller, incompressible entries are stored as is
+        if (len >= data.length)
+            return new Entry(time, ZipEntry.STORED, (int) crc.getValue(), data.length, data, data.length);
+        return new Entry(time, ZipEntry.DEFLATED, (int) crc.getValue(), data.length, buf, len);
+    }
+
+    /**
+     * Gets the number of added entries.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Writes all added entries, and their directories, to the given path.
+     */
+    public void write(final Path output) throws IOException {
+        // Keyed by "/" prefixed path, directories map to null
+        final Map<String, Entry> sorted = new TreeMap<>(this.stable ? STABLE_ORDER : ORDER);
+        this.entries.forEach((name, data) -> {
+            sorted.put('/' + name, data);
+            for (int idx = name.indexOf('/'); idx != -1; idx = name.indexOf('/', idx + 1))
+                sorted.putIfAbsent('/' + name.substring(0, idx), null);
+        });
+
+        final long dirTime = toDosTime(this.stable ? STABLE_TIME : this.now);
+        final List<byte[]> names = new ArrayList<>(sorted.size());
+        final List<Entry> written = new ArrayList<>(sorted.size());
+        final long[] offsets = new long[sorted.size()];
+        final long[] times = new long[sorted.size()];
+
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final Output out = new Output(channel);
+            for (Map.Entry<String, Entry> e : sorted.entrySet()) {
+                final Entry entry = e.getValue() == null ? new Entry(0, ZipEntry.STORED, 0, 0, null, 0) : e.getValue();
+                final String path = e.getValue() == null ? e.getKey().substring(1) + '/' : e.getKey().substring(1);
+                final byte[] name = path.getBytes(StandardCharsets.UTF_8);
+                final long dosTime = e.getValue() == null ? dirTime : toDosTime(entry.time);
+
+                offsets[written.size()] = out.position();
+                times[written.size()] = dosTime;
+                names.add(name);
+                written.add(entry);
+
+                out.putInt(LOCAL_HEADER);
+                out.putShort(entry.method == ZipEntry.DEFLATED ? 20 : 10);
+                out.putShort(UTF8_FLAG);
+                out.putShort(entry.method);
+                out.putInt((int) dosTime);
+                out.putInt(entry.crc);
+                out.putInt(entry.length);
+                out.putInt(entry.size);
+                out.putShort(name.length);
+                out.putShort(0);
+                out.put(name, 0, name.length);
+                out.transfer(this.spool, entry.offset, entry.length);
+            }
+
+            final long cdOffset = out.position();
+            for (int i = 0; i < written.size(); i++) {
+                final Entry entry = written.get(i);
+                final byte[] name = names.get(i);
+                final boolean zip64 = offsets[i] >= ZIP64_MAGIC;
+
+                out.putInt(CENTRAL_HEADER);
+                out.putShort(zip64 ? 45 : 20);
+                out.putShort(zip64 ? 45 : entry.method == ZipEntry.DEFLATED ? 20 : 10);
+                out.putShort(UTF8_FLAG);
+                out.putShort(entry.method);
+                out.putInt((int) times[i]);
+                out.putInt(entry.crc);
+                out.putInt(entry.length);
+                out.putInt(entry.size);
+                out.putShort(name.length);
+                out.putShort(zip64 ? 12 : 0);
+                out.putShort(0);
+                out.putShort(0);
+                out.putShort(0);
+                out.putInt(0);
+                out.putInt((int) (zip64 ? ZIP64_MAGIC : offsets[i]));
+                out.put(name, 0, name.length);
+                if (zip64) {
+                    out.putShort(0x0001);
+                    out.putShort(8);
+                    out.putLong(offsets[i]);
+                }
+            }
+            final long cdEnd = out.position();
+            final long cdSize = cdEnd - cdOffset;
+            final int count = written.size();
+
+            if (count >= ZIP64_MAGIC_COUNT || cdOffset >= ZIP64_MAGIC || cdSize >= ZIP64_MAGIC) {
+                out.putInt(ZIP64_END_HEADER);
+                out.putLong(44);
+                out.putShort(45);
+                out.putShort(45);
+                out.putInt(0);
+                out.putInt(0);
+                out.putLong(count);
+                out.putLong(count);
+                out.putLong(cdSize);
+                out.putLong(cdOffset);
+
+                out.putInt(ZIP64_LOCATOR);
+                out.putInt(0);
+                out.putLong(cdEnd);
+                out.putInt(1);
+            }
+
+            out.putInt(END_HEADER);
+            out.putShort(0);
+            out.putShort(0);
+            out.putShort(Math.min(count, ZIP64_MAGIC_COUNT));
+            out.putShort(Math.min(count, ZIP64_MAGIC_COUNT));
+            out.putInt((int) Math.min(cdSize, ZIP64_MAGIC));
+            out.putInt((int) Math.min(cdOffset, ZIP64_MAGIC));
+            out.putShort(0);
+            out.flush();
+        }
+    }
+
+    /**
+     * Ends the deflaters and deletes the spool file.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Deflater deflater; (deflater = this.allDeflaters.poll()) != null; )
+            deflater.end();
+        this.spool.close();
+    }
+
+    private static long toDosTime(final long time) {
+        final LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        final int year = date.getYear();
+        if (year < 1980)
+            return (1 << 21) | (1 << 16);
+        if (year > 2107)
+            return 0xFF9FBF7DL;
+        return (year - 1980) << 25 | date.getMonthValue() << 21 | date.getDayOfMonth() << 16
+                | date.getHour() << 11 | date.getMinute() << 5 | date.getSecond() >> 1;
+    }
+
+    private static final class Entry {
+        final long time;
+        final int method;
+        final int crc;
+        final int size;
+        // Only held until the entry is spooled
+        final byte[] data;
+        final int length;
+        final long offset;
+
+        Entry(final long time, final int method, final int crc, final int size, final byte[] data, final int length) {
+            this(time, method, crc, size, data, length, -1);
+        }
+
+        Entry(final long time, final int method, final int crc, final int size, final byte[] data, final int length, final long offset) {
+            this.time = time;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+            this.length = length;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Buffers small writes, and hands large ones to the channel directly.
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        Output(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return this.position;
+        }
+
+        private void ensure(final int bytes) throws IOException {
+            if (this.buffer.remaining() < bytes)
+                this.flush();
+        }
+
+        void putShort(final int value) throws IOException {
+            this.ensure(2);
+            this.buffer.putShort((short) value);
+            this.position += 2;
+        }
+
+        void putInt(final int value) throws IOException {
+            this.ensure(4);
+            this.buffer.putInt(value);
+            this.position += 4;
+        }
+
+        void putLong(final long value) throws IOException {
+            this.ensure(8);
+            this.buffer.putLong(value);
+            this.position += 8;
+        }
+
+        void put(final byte[] data, final int offset, final int length) throws IOException {
+            if (length <= this.buffer.remaining()) {
+                this.buffer.put(data, offset, length);
+            }
+            else {
+                this.flush();
+                final ByteBuffer wrapped = ByteBuffer.wrap(data, offset, length);
+                while (wrapped.hasRemaining())
+                    this.channel.write(wrapped);
+            }
+            this.position += length;
+        }
+
+        /**
+         * Copies the given range of another channel, without going through the heap.
+         */
+        void transfer(final FileChannel from, final long offset, final long length) throws IOException {
+            if (length == 0)
+                return;
+            this.flush();
+            long done = 0;
+            while (done < length) {
+                final long read = from.transferTo(offset + done, length - done, this.channel);
+                if (read <= 0)
+                    throw new IOException("Spool file ended early");
+                done += read;
+            }
+            this.position += length;
+        }
+
+        void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining())
+                this.channel.write(this.buffer);
+            this.buffer.clear();
+        }
+    }
+
+}
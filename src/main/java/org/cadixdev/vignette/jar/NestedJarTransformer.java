@@ -0,0 +1,94 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.jar;
+
+import org.cadixdev.bombe.jar.AbstractJarEntry;
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.cadixdev.bombe.jar.JarManifestEntry;
+import org.cadixdev.bombe.jar.JarResourceEntry;
+import org.cadixdev.bombe.jar.JarServiceProviderConfigurationEntry;
+import org.minecraftplus.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * A {@link JarEntryTransformer} remapping the jars nested in a jar, such as
+ * those under {@code META-INF/jars/}, and passing every other entry to the
+ * wrapped transformer.
+ * <p>
+ * Nested jars are remapped on the worker thread that reads them, so they are
+ * scheduled along with the other entries of the jar. Entries named like jars
+ * which are not valid jars are kept as they are.
+ */
+public final class NestedJarTransformer implements JarEntryTransformer {
+
+    private final JarEntryTransformer transformer;
+    private final Remapper remapper;
+    private final Log log;
+
+    public NestedJarTransformer(final JarEntryTransformer transformer, final Remapper remapper, final Log log) {
+        this.transformer = transformer;
+        this.remapper = remapper;
+        this.log = log;
+    }
+
+    @Override
+    public JarClassEntry transform(final JarClassEntry entry) {
+        return this.transformer.transform(entry);
+    }
+
+    @Override
+    public JarManifestEntry transform(final JarManifestEntry entry) {
+        return this.transformer.transform(entry);
+    }
+
+    @Override
+    public JarServiceProviderConfigurationEntry transform(final JarServiceProviderConfigurationEntry entry) {
+        return this.transformer.transform(entry);
+    }
+
+    @Override
+    public JarResourceEntry transform(final JarResourceEntry entry) {
+        if (!entry.getName().endsWith(".jar"))
+            return this.transformer.transform(entry);
+
+        try {
+            return new JarResourceEntry(entry.getName(), entry.getTime(), this.remapper.remap(entry.getName(), entry.getContents()));
+        } catch (ZipException ex) {
+            this.log.info("Kept nested jar " + entry.getName() + " as is, it is not a valid jar: " + ex.getMessage());
+            return entry;
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to remap nested jar " + entry.getName() + "!", ex);
+        }
+    }
+
+    @Override
+    public List<AbstractJarEntry> additions() {
+        return this.transformer.additions();
+    }
+
+    /**
+     * Remaps a nested jar.
+     */
+    @FunctionalInterface
+    public interface Remapper {
+
+        /**
+         * Remaps the given jar.
+         *
+         * @param name the name of the jar entry
+         * @param data the contents of the jar
+         * @return the contents of the remapped jar
+         */
+        byte[] remap(String name, byte[] data) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.report;
+
+import org.minecraftplus.StageTimings;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the timings and statistics of Vignette runs, to be written as JSON.
+ * <p>
+ * Phases are timed in wall and CPU time of the whole process, so the CPU time
+ * includes every worker thread. Stages and classes are timed by
+ * {@link StageTimings}, summed over all worker threads. Everything adds up over
+ * all runs reported to the same report.
+ */
+public final class Report {
+
+    private static final OperatingSystemMXBean OS = ManagementFactory.getOperatingSystemMXBean();
+
+    private final Map<String, long[]> phases = new LinkedHashMap<>();
+    private final StageTimings stages;
+    private final Map<String, AtomicLong> counts = new LinkedHashMap<>();
+    // workers, entries, wall, busy, worker capacity and tail nanos
+    private final long[] scheduling = new long[6];
+    private final int slowestClasses;
+
+    /**
+     * Creates a report.
+     *
+     * @param slowestClasses the number of slowest classes to list
+     */
+    public Report(final int slowestClasses) {
+        this.slowestClasses = slowestClasses;
+        this.stages = new StageTimings(slowestClasses);
+        for (String count : new String[] { "classes", "resources", "nestedJars", "cacheHits", "cacheMisses", "bytesIn", "bytesOut" })
+            this.counts.put(count, new AtomicLong());
+    }
+
+    /**
+     * Gets the CPU time used by the process so far in nanoseconds, or {@code -1}
+     * if the JVM doesn't tell.
+     */
+    private static long getProcessCpuTime() {
+        if (OS instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) OS).getProcessCpuTime();
+        return -1;
+    }
+
+    /**
+     * Starts timing the given phase, until the returned phase is stopped.
+     */
+    public Phase start(final String name) {
+        return new Phase(name, System.nanoTime(), getProcessCpuTime());
+    }
+
+    public StageTimings getStageTimings() {
+        return this.stages;
+    }
+
+    /**
+     * Adds to the given count, one of {@code classes}, {@code resources},
+     * {@code nestedJars}, {@code cacheHits}, {@code cacheMisses}, {@code bytesIn}
+     * and {@code bytesOut}.
+     */
+    public void count(final String name, final long value) {
+        final AtomicLong count = this.counts.get(name);
+        if (count == null)
+            throw new IllegalArgumentException("Unknown count: " + name);
+        count.addAndGet(value);
+    }
+
+    /**
+     * Adds how busy the workers were while transforming a jar.
+     *
+     * @param workers the number of workers
+     * @param entries the number of entries transformed
+     * @param wall the wall time of the transformation in nanoseconds
+     * @param busy the time the workers spent on entries, summed over all workers
+     * @param tail the time from the start of the last entry to the end of the transformation
+     */
+    public void schedule(final int workers, final int entries, final long wall, final long busy, final long tail) {
+        synchronized (this.scheduling) {
+            this.scheduling[0] = Math.max(this.scheduling[0], workers);
+            this.scheduling[1] += entries;
+            this.scheduling[2] += wall;
+            this.scheduling[3] += busy;
+            this.scheduling[4] += wall * workers;
+            this.scheduling[5] += tail;
+        }
+    }
+
+    /**
+     * Writes the report as JSON to the given file.
+     */
+    public void write(final Path file) throws IOException {
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.write("{\n");
+            final String version = Report.class.getPackage().getImplementationVersion();
+            out.write("  \"version\": " + (version == null ? "null" : string(version)) + ",\n");
+
+            out.write("  \"phases\": {");
+            synchronized (this.phases) {
+                final Iterator<Map.Entry<String, long[]>> it = this.phases.entrySet().iterator();
+                while (it.hasNext()) {
+                    final Map.Entry<String, long[]> phase = it.next();
+                    out.write("\n    " + string(phase.getKey()) + ": { \"wallMillis\": " + millis(phase.getValue()[0])
+                            + ", \"cpuMillis\": " + (phase.getValue()[1] < 0 ? "null" : millis(phase.getValue()[1])) + " }"
+                            + (it.hasNext() ? "," : "\n  "));
+                }
+            }
+            out.write("},\n");
+
+            out.write("  \"stageMillis\": {");
+            final Iterator<Map.Entry<String, Long>> stages = this.stages.getStageTimes().entrySet().iterator();
+            while (stages.hasNext()) {
+                final Map.Entry<String, Long> stage = stages.next();
+                out.write("\n    " + string(stage.getKey()) + ": " + millis(stage.getValue()) + (stages.hasNext() ? "," : "\n  "));
+            }
+            out.write("},\n");
+
+            synchronized (this.scheduling) {
+                final long[] s = this.scheduling;
+                out.write("  \"scheduling\": { \"workers\": " + s[0] + ", \"entries\": " + s[1] + ", \"wallMillis\": " + millis(s[2])
+                        + ", \"busyMillis\": " + millis(s[3]) + ", \"utilization\": " + (s[4] == 0 ? "null" : String.valueOf(Math.round(1000.0 * s[3] / s[4]) / 1000.0))
+                        + ", \"tailMillis\": " + millis(s[5]) + " },\n");
+            }
+
+            for (Map.Entry<String, AtomicLong> count : this.counts.entrySet())
+                out.write("  " + string(count.getKey()) + ": " + count.getValue().get() + ",\n");
+
+            out.write("  \"slowestClasses\": [");
+            final List<StageTimings.ClassTime> slowest = this.stages.getSlowestClasses(this.slowestClasses);
+            for (int i = 0; i < slowest.size(); i++) {
+                out.write("\n    { \"name\": " + string(slowest.get(i).getName()) + ", \"millis\": " + millis(slowest.get(i).getNanos()) + " }"
+                        + (i + 1 < slowest.size() ? "," : "\n  "));
+            }
+            out.write("]\n");
+            out.write("}\n");
+        }
+    }
+
+    private static String millis(final long nanos) {
+        return String.valueOf(nanos / 1000 / 1000.0);
+    }
+
+    private static String string(final String value) {
+        final StringBuilder ret = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                ret.append('\\').append(c);
+            else if (c < 0x20)
+                ret.append(String.format("\\u%04x", (int) c));
+            else
+                ret.append(c);
+        }
+        return ret.append('"').toString();
+    }
+
+    /**
+     * A phase being timed.
+     */
+    public final class Phase {
+        private final String name;
+        private final long wall;
+        private final long cpu;
+
+        Phase(final String name, final long wall, final long cpu) {
+            this.name = name;
+            this.wall = wall;
+            this.cpu = cpu;
+        }
+
+        /**
+         * Stops timing the phase, adding its time to the report.
+         */
+        public void stop() {
+            final long wall = System.nanoTime() - this.wall;
+            final long cpu = this.cpu < 0 ? -1 : getProcessCpuTime() - this.cpu;
+            synchronized (Report.this.phases) {
+                final long[] total = Report.this.phases.computeIfAbsent(this.name, k -> new long[2]);
+                total[0] += wall;
+                total[1] = cpu < 0 || total[1] < 0 ? -1 : total[1] + cpu;
+            }
+        }
+    }
+
+}
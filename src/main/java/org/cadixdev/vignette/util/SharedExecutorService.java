@@ -0,0 +1,111 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An {@link ExecutorService} handing tasks to a {@link ForkJoinPool} shared by
+ * several users, none of which may shut it down.
+ * <p>
+ * Tasks are submitted to the pool directly, so a worker waiting for tasks it
+ * submitted runs queued tasks instead of blocking. This allows waiting for
+ * other tasks from a task without running out of workers.
+ */
+public final class SharedExecutorService implements ExecutorService {
+
+    private final ForkJoinPool pool;
+
+    public SharedExecutorService(final ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Does nothing, the pool is shut down by its owner.
+     */
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * Does nothing, the pool is shut down by its owner.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.pool.isTerminated();
+    }
+
+    /**
+     * Returns straight away, as shutting down does nothing.
+     */
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+        return true;
+    }
+
+    @Override
+    public <T> Future<T> submit(final Callable<T> task) {
+        return this.pool.submit(task);
+    }
+
+    @Override
+    public <T> Future<T> submit(final Runnable task, final T result) {
+        return this.pool.submit(task, result);
+    }
+
+    @Override
+    public Future<?> submit(final Runnable task) {
+        return this.pool.submit(task);
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks) {
+        return this.pool.invokeAll(tasks);
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return this.pool.invokeAll(tasks, timeout, unit);
+    }
+
+    @Override
+    public <T> T invokeAny(final Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        return this.pool.invokeAny(tasks);
+    }
+
+    @Override
+    public <T> T invokeAny(final Collection<? extends Callable<T>> tasks, final long timeout, final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return this.pool.invokeAny(tasks, timeout, unit);
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        this.pool.execute(command);
+    }
+
+}
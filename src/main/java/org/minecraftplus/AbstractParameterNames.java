@@ -0,0 +1,110 @@
+package org.minecraftplus;
+
+import org.cadixdev.bombe.jar.JarResourceEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * The parameter names of abstract methods collected for the ForgeFlower metadata file.
+ * <p>
+ * Every thread adds its lines to a buffer of its own, the buffers are only merged,
+ * sorted and deduplicated when the file is written.
+ * <p>
+ * The lines stored while transforming one class can be recorded, so that a cached
+ * class can contribute its names again without being transformed.
+ */
+public final class AbstractParameterNames {
+    public static final String FILE_NAME = "fernflower_abstract_parameter_names.txt";
+
+    private final Queue<List<String>> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<List<String>> buffer = ThreadLocal.withInitial(() -> {
+        final List<String> ret = new ArrayList<>();
+        this.buffers.add(ret);
+        return ret;
+    });
+    private final ThreadLocal<List<String>> recording = new ThreadLocal<>();
+
+    public void add(final String className, final String methodName, final String methodDescriptor, final Collection<String> paramNames) {
+        this.add(className + ' ' + methodName + ' ' + methodDescriptor + ' ' + String.join(" ", paramNames));
+    }
+
+    public void add(final String line) {
+        this.buffer.get().add(line);
+        final List<String> recorded = this.recording.get();
+        if (recorded != null)
+            recorded.add(line);
+    }
+
+    public void addAll(final Collection<String> lines) {
+        lines.forEach(this::add);
+    }
+
+    /**
+     * Runs the given action, adding the lines it stores on this thread to the given list.
+     */
+    public <T> T record(final List<String> into, final Supplier<T> action) {
+        final List<String> previous = this.recording.get();
+        this.recording.set(into);
+        try {
+            return action.get();
+        } finally {
+            this.recording.set(previous);
+        }
+    }
+
+    /**
+     * Checks whether no line was added, only once every thread adding lines is done.
+     */
+    public boolean isEmpty() {
+        for (List<String> buffer : this.buffers) {
+            if (!buffer.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates the metadata file, only once every thread adding lines is done.
+     */
+    public JarResourceEntry toEntry() {
+        int size = 0;
+        for (List<String> buffer : this.buffers)
+            size += buffer.size();
+        final String[] lines = new String[size];
+        int i = 0;
+        for (List<String> buffer : this.buffers) {
+            for (String line : buffer)
+                lines[i++] = line;
+        }
+        Arrays.parallelSort(lines);
+
+        // Lines are encoded as they are written, without joining them first
+        final ByteArrayOutputStream data = new ByteArrayOutputStream(64 * size);
+        try (Writer out = new OutputStreamWriter(data, StandardCharsets.UTF_8)) {
+            String last = null;
+            for (String line : lines) {
+                if (line.equals(last))
+                    continue;
+                if (last != null)
+                    out.write('\n');
+                out.write(line);
+                last = line;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new JarResourceEntry(FILE_NAME, 1, data.toByteArray());
+    }
+}
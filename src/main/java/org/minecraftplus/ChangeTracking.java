@@ -0,0 +1,15 @@
+package org.minecraftplus;
+
+/**
+ * Implemented by the visitors of {@link ClassStage}s which know whether they
+ * changed the class they visited. When none of the visitors of a class changed
+ * it, {@link ClassStageChain} returns the original bytes instead of writing the
+ * class again. Visitors not implementing it are taken to change every class.
+ */
+public interface ChangeTracking {
+    /**
+     * Whether the visited class is written differently, only valid once the
+     * class has been visited to the end.
+     */
+    boolean hasChanged();
+}
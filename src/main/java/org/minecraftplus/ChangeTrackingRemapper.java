@@ -0,0 +1,68 @@
+package org.minecraftplus;
+
+import org.objectweb.asm.commons.Remapper;
+
+/**
+ * Remaps through another remapper, noting whether any name was changed. Every
+ * descriptor, signature and value is remapped through these names, so a class
+ * only remapped with unchanged names is unchanged.
+ * <p>
+ * Created for every class, as the remapper it wraps is shared by all threads.
+ */
+public class ChangeTrackingRemapper extends Remapper {
+    private final Remapper remapper;
+    private boolean changed;
+
+    public ChangeTrackingRemapper(Remapper remapper) {
+        this.remapper = remapper;
+    }
+
+    public boolean hasChanged() {
+        return changed;
+    }
+
+    /**
+     * Notes a change made outside of the remapper, such as a renamed local variable.
+     * A {@code null} result means unchanged, like for {@link Remapper#map(String)}.
+     */
+    public String track(String from, String to) {
+        if (!changed && to != null && to != from && !to.equals(from))
+            changed = true;
+        return to;
+    }
+
+    @Override
+    public String map(String internalName) {
+        return track(internalName, remapper.map(internalName));
+    }
+
+    @Override
+    public String mapMethodName(String owner, String name, String descriptor) {
+        return track(name, remapper.mapMethodName(owner, name, descriptor));
+    }
+
+    @Override
+    public String mapInvokeDynamicMethodName(String name, String descriptor) {
+        return track(name, remapper.mapInvokeDynamicMethodName(name, descriptor));
+    }
+
+    @Override
+    public String mapFieldName(String owner, String name, String descriptor) {
+        return track(name, remapper.mapFieldName(owner, name, descriptor));
+    }
+
+    @Override
+    public String mapRecordComponentName(String owner, String name, String descriptor) {
+        return track(name, remapper.mapRecordComponentName(owner, name, descriptor));
+    }
+
+    @Override
+    public String mapPackageName(String name) {
+        return track(name, remapper.mapPackageName(name));
+    }
+
+    @Override
+    public String mapModuleName(String name) {
+        return track(name, remapper.mapModuleName(name));
+    }
+}
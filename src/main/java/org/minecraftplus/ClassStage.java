@@ -0,0 +1,42 @@
+package org.minecraftplus;
+
+import org.cadixdev.bombe.jar.JarClassEntry;
+import org.cadixdev.bombe.jar.JarEntryTransformer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * A transformer which works on classes as a single {@link ClassVisitor} layer,
+ * so that several of them can share one read and one write of each class.
+ *
+ * @see ClassStageChain
+ */
+public interface ClassStage extends JarEntryTransformer {
+
+    /**
+     * Creates the visitor layer of this stage, events are forwarded to the given parent.
+     */
+    ClassVisitor createVisitor(ClassVisitor parent);
+
+    /**
+     * Checks from the raw input class whether this stage may change it. Stages
+     * answering false are left out of the chain for that class, which is
+     * worth it when only few classes need the stage and the check is cheaper
+     * than running its visitor.
+     */
+    default boolean isCandidate(ClassReader reader) {
+        return true;
+    }
+
+    /**
+     * Maps the internal name of the class, used to name the output entry.
+     */
+    default String mapClassName(String name) {
+        return name;
+    }
+
+    @Override
+    default JarClassEntry transform(final JarClassEntry entry) {
+        return new ClassStageChain(this).transform(entry);
+    }
+}
@@ -0,0 +1,222 @@
+package org.minecraftplus;
+
+import org.cadixdev.bombe.jar.*;
+import org.minecraftplus.jfr.ClassTransformEvent;
+import org.minecraftplus.jfr.Jfr;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a list of {@link ClassStage}s as one transformer. Every class is read and
+ * written once, with the visitor layers of the stages composed in order.
+ * Classes no stage changed keep their original bytes.
+ * Other entries are passed through the stages one after another.
+ */
+public class ClassStageChain implements JarEntryTransformer {
+    private final List<ClassStage> stages;
+    private final StageTimings timings;
+    private final String stageNames;
+    // The timing slots of the reader, of every stage and of the writer, resolved once
+    private final int readerSlot;
+    private final int[] stageSlots;
+    private final int writerSlot;
+    private final int slotCount;
+
+    public ClassStageChain(List<ClassStage> stages) {
+        this(stages, null);
+    }
+
+    /**
+     * @param timings records the time of every stage and class, or {@code null}
+     */
+    public ClassStageChain(List<ClassStage> stages, StageTimings timings) {
+        this.stages = Collections.unmodifiableList(new ArrayList<>(stages));
+        this.timings = timings;
+        this.stageNames = this.stages.stream().map(ClassStageChain::stageName).collect(Collectors.joining(", "));
+        this.stageSlots = new int[this.stages.size()];
+        if (timings != null) {
+            // Listed in the order the classes go through
+            this.readerSlot = timings.register(StageTimings.READER);
+            int max = this.readerSlot;
+            for (int i = 0; i < this.stageSlots.length; i++)
+                max = Math.max(max, this.stageSlots[i] = timings.register(stageName(this.stages.get(i))));
+            this.writerSlot = timings.register(StageTimings.WRITER);
+            this.slotCount = Math.max(max, this.writerSlot) + 1;
+        } else {
+            this.readerSlot = this.writerSlot = this.slotCount = 0;
+        }
+    }
+
+    public ClassStageChain(ClassStage... stages) {
+        this(Arrays.asList(stages));
+    }
+
+    public List<ClassStage> getStages() {
+        return stages;
+    }
+
+    @Override
+    public JarClassEntry transform(final JarClassEntry entry) {
+        final ClassTransformEvent event = Jfr.AVAILABLE ? new ClassTransformEvent() : null;
+        if (event != null)
+            event.begin();
+
+        final JarClassEntry ret = timings != null ? transformTimed(entry) : transformClass(entry);
+
+        if (event != null) {
+            event.className = entry.getName();
+            event.inputSize = entry.getContents().length;
+            event.outputSize = ret.getContents().length;
+            event.transformers = stageNames;
+            event.commit();
+        }
+        return ret;
+    }
+
+    private JarClassEntry transformClass(final JarClassEntry entry) {
+        final ClassReader reader = new ClassReader(entry.getContents());
+        final List<ClassStage> stages = candidates(reader);
+        final String name = mapClassName(entry);
+        if (stages.isEmpty() && name.equals(entry.getName()))
+            return entry;
+
+        final ClassWriter writer = new ClassWriter(reader, 0);
+
+        // Build the chain backwards, so the first stage sees the events first
+        final ClassVisitor[] visitors = new ClassVisitor[stages.size()];
+        ClassVisitor visitor = writer;
+        for (int i = stages.size() - 1; i >= 0; i--)
+            visitor = visitors[i] = stages.get(i).createVisitor(visitor);
+        reader.accept(visitor, 0);
+
+        if (!hasChanged(visitors) && name.equals(entry.getName()))
+            return entry;
+        return new JarClassEntry(name, entry.getTime(), writer.toByteArray());
+    }
+
+    private JarClassEntry transformTimed(final JarClassEntry entry) {
+        final long start = System.nanoTime();
+        if (!timings.sample()) {
+            // Most classes are only timed as a whole
+            final JarClassEntry ret = transformClass(entry);
+            timings.addClass(entry.getName(), System.nanoTime() - start, null);
+            return ret;
+        }
+
+        final long[] times = new long[slotCount];
+        final ClassReader reader = new ClassReader(entry.getContents());
+        final List<ClassStage> stages = candidates(reader);
+        final String name = mapClassName(entry);
+        if (stages.isEmpty() && name.equals(entry.getName())) {
+            times[readerSlot] = System.nanoTime() - start;
+            timings.addClass(entry.getName(), times[readerSlot], times);
+            return entry;
+        }
+
+        final ClassWriter writer = new ClassWriter(reader, 0);
+
+        // Every stage, and the writer, is called through a timing visitor charging the calls to it
+        final ClassVisitor[] visitors = new ClassVisitor[stages.size()];
+        ClassVisitor visitor = timings.wrap(writer, times, writerSlot, stages.isEmpty() ? readerSlot : slot(stages.get(stages.size() - 1)));
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            visitors[i] = stages.get(i).createVisitor(visitor);
+            visitor = timings.wrap(visitors[i], times, slot(stages.get(i)), i == 0 ? readerSlot : slot(stages.get(i - 1)));
+        }
+        reader.accept(visitor, 0);
+        times[readerSlot] += System.nanoTime() - start;
+
+        if (!hasChanged(visitors) && name.equals(entry.getName())) {
+            timings.addClass(entry.getName(), System.nanoTime() - start, times);
+            return entry;
+        }
+
+        final long write = System.nanoTime();
+        final byte[] data = writer.toByteArray();
+        final long end = System.nanoTime();
+        times[writerSlot] += end - write;
+        timings.addClass(entry.getName(), end - start, times);
+        return new JarClassEntry(name, entry.getTime(), data);
+    }
+
+    private int slot(final ClassStage stage) {
+        return stageSlots[stages.indexOf(stage)];
+    }
+
+    /**
+     * Gets the stages which may change the given class, usually all of them.
+     */
+    private List<ClassStage> candidates(final ClassReader reader) {
+        List<ClassStage> ret = null;
+        for (int i = 0; i < stages.size(); i++) {
+            if (!stages.get(i).isCandidate(reader)) {
+                if (ret == null)
+                    ret = new ArrayList<>(stages.subList(0, i));
+            } else if (ret != null) {
+                ret.add(stages.get(i));
+            }
+        }
+        return ret == null ? stages : ret;
+    }
+
+    /**
+     * Checks whether any of the given visitors changed the class, when they can tell.
+     */
+    private static boolean hasChanged(final ClassVisitor[] visitors) {
+        for (ClassVisitor visitor : visitors) {
+            if (!(visitor instanceof ChangeTracking) || ((ChangeTracking) visitor).hasChanged())
+                return true;
+        }
+        return false;
+    }
+
+    private String mapClassName(final JarClassEntry entry) {
+        // Classes are renamed by every stage, even those left out of the chain
+        String name = entry.getName().substring(0, entry.getName().length() - ".class".length());
+        for (ClassStage stage : stages)
+            name = stage.mapClassName(name);
+        return name + ".class";
+    }
+
+    private static String stageName(ClassStage stage) {
+        return stage.getClass().getSimpleName();
+    }
+
+    @Override
+    public JarManifestEntry transform(final JarManifestEntry entry) {
+        JarManifestEntry ret = entry;
+        for (int i = 0; i < stages.size() && ret != null; i++)
+            ret = stages.get(i).transform(ret);
+        return ret;
+    }
+
+    @Override
+    public JarServiceProviderConfigurationEntry transform(final JarServiceProviderConfigurationEntry entry) {
+        JarServiceProviderConfigurationEntry ret = entry;
+        for (int i = 0; i < stages.size() && ret != null; i++)
+            ret = stages.get(i).transform(ret);
+        return ret;
+    }
+
+    @Override
+    public JarResourceEntry transform(final JarResourceEntry entry) {
+        JarResourceEntry ret = entry;
+        for (int i = 0; i < stages.size() && ret != null; i++)
+            ret = stages.get(i).transform(ret);
+        return ret;
+    }
+
+    @Override
+    public List<AbstractJarEntry> additions() {
+        List<AbstractJarEntry> ret = new ArrayList<>();
+        for (ClassStage stage : stages)
+            ret.addAll(stage.additions());
+        return ret;
+    }
+}
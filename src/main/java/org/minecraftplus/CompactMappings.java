@@ -0,0 +1,386 @@
+package org.minecraftplus;
+
+import net.minecraftforge.lex.TSrg2Format;
+import net.minecraftforge.lex.TSrg2Parser;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.io.MappingFormat;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.MethodParameterMapping;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only mappings stored in flat arrays, for remapping with a fraction of
+ * the memory of a {@link MappingSet}.
+ * <p>
+ * Every name is stored once and referred to by an int id. Classes, fields and
+ * methods are rows of int arrays, found through open addressing tables, and the
+ * parameter names of a method are a single array indexed by LVT index, like in
+ * {@link ParameterIndex}. Inherited members are not copied into the classes,
+ * they are looked up through the hierarchy by {@link CompactRemapper}, so the
+ * mappings are never modified and may be shared by any number of remaps.
+ */
+public final class CompactMappings {
+    /** The id of a missing name, such as the descriptor of a field without one. */
+    public static final int NONE = -1;
+
+    private final String[] names;
+    private final int[] nameTable;
+
+    // By obfuscated name id, the class row plus one
+    private final int[] classByObf;
+    private final int[] classObf;
+    private final int[] classDeobf;
+    // By full deobfuscated name id, the class row plus one, indexed when first needed
+    private volatile int[] classByDeobf;
+
+    private final int[] fieldOwner, fieldName, fieldDesc, fieldDeobf;
+    private final int[] fieldTable;
+    private final int[] methodOwner, methodName, methodDesc, methodDeobf;
+    private final String[][] methodParams;
+    private final int[] methodTable;
+
+    private CompactMappings(Builder builder) {
+        this.names = builder.names.toArray(new String[0]);
+        this.nameTable = new int[tableSize(this.names.length)];
+        for (int id = 0; id < this.names.length; id++)
+            this.nameTable[this.nameSlot(this.names[id])] = id + 1;
+
+        this.classObf = Arrays.copyOf(builder.classObf, builder.classCount);
+        this.classDeobf = Arrays.copyOf(builder.classDeobf, builder.classCount);
+        this.classByObf = new int[this.names.length];
+        for (int row = 0; row < this.classObf.length; row++)
+            this.classByObf[this.classObf[row]] = row + 1;
+
+        this.fieldOwner = Arrays.copyOf(builder.fieldOwner, builder.fieldCount);
+        this.fieldName = Arrays.copyOf(builder.fieldName, builder.fieldCount);
+        this.fieldDesc = Arrays.copyOf(builder.fieldDesc, builder.fieldCount);
+        this.fieldDeobf = Arrays.copyOf(builder.fieldDeobf, builder.fieldCount);
+        this.fieldTable = this.memberTable(this.fieldOwner, this.fieldName, this.fieldDesc);
+
+        this.methodOwner = Arrays.copyOf(builder.methodOwner, builder.methodCount);
+        this.methodName = Arrays.copyOf(builder.methodName, builder.methodCount);
+        this.methodDesc = Arrays.copyOf(builder.methodDesc, builder.methodCount);
+        this.methodDeobf = Arrays.copyOf(builder.methodDeobf, builder.methodCount);
+        this.methodParams = Arrays.copyOf(builder.methodParams, builder.methodCount);
+        this.methodTable = this.memberTable(this.methodOwner, this.methodName, this.methodDesc);
+    }
+
+    /**
+     * Reads the given mappings. Tsrg2 mappings are parsed straight into the
+     * compact tables, other formats are read as a {@link MappingSet} first.
+     */
+    public static CompactMappings read(MappingFormat format, Path path) throws IOException {
+        if (format instanceof TSrg2Format) {
+            final Builder builder = new Builder();
+            TSrg2Parser.parse(Files.readAllBytes(path), builder);
+            return builder.build();
+        }
+        return of(format.read(path));
+    }
+
+    /**
+     * Copies the given mappings, they may be dropped afterwards.
+     */
+    public static CompactMappings of(MappingSet mappings) {
+        final Builder builder = new Builder();
+        for (ClassMapping<?, ?> cls : mappings.getTopLevelClassMappings())
+            builder.add(cls);
+        return builder.build();
+    }
+
+    /**
+     * Gets the id of the given name, or {@link #NONE} if no mapping uses it.
+     */
+    public int id(String name) {
+        if (name == null)
+            return NONE;
+        return this.nameTable[this.nameSlot(name)] - 1;
+    }
+
+    public String name(int id) {
+        return this.names[id];
+    }
+
+    private int nameSlot(String name) {
+        final int mask = this.nameTable.length - 1;
+        int slot = mix(name.hashCode()) & mask;
+        while (this.nameTable[slot] != 0 && !this.names[this.nameTable[slot] - 1].equals(name))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    public int getClassCount() {
+        return this.classObf.length;
+    }
+
+    public int getFieldCount() {
+        return this.fieldOwner.length;
+    }
+
+    public int getMethodCount() {
+        return this.methodOwner.length;
+    }
+
+    /**
+     * Gets the full deobfuscated name of the given class, or {@code null} if
+     * neither it nor, for inner classes, an outer class is mapped.
+     */
+    public String mapClass(String name) {
+        final int id = this.id(name);
+        if (id != NONE && this.classByObf[id] != 0)
+            return this.names[this.classDeobf[this.classByObf[id] - 1]];
+        final int split = name.lastIndexOf('$');
+        if (split < 0)
+            return null;
+        final String outer = this.mapClass(name.substring(0, split));
+        return outer == null ? null : outer + name.substring(split);
+    }
+
+    /**
+     * Gets the obfuscated name of the class with the given full deobfuscated
+     * name, or the name itself if no class is mapped to it.
+     */
+    public String unmapClass(String name) {
+        int[] index = this.classByDeobf;
+        if (index == null) {
+            synchronized (this) {
+                index = this.classByDeobf;
+                if (index == null) {
+                    index = new int[this.names.length];
+                    for (int row = this.classObf.length - 1; row >= 0; row--)
+                        index[this.classDeobf[row]] = row + 1;
+                    this.classByDeobf = index;
+                }
+            }
+        }
+
+        final int id = this.id(name);
+        if (id != NONE && index[id] != 0)
+            return this.names[this.classObf[index[id] - 1]];
+        final int split = name.lastIndexOf('$');
+        if (split < 0)
+            return name;
+        return this.unmapClass(name.substring(0, split)) + name.substring(split);
+    }
+
+    /**
+     * Gets the row of the field declared with the given ids, or {@link #NONE}.
+     */
+    public int findField(int owner, int name, int desc) {
+        return findMember(this.fieldTable, this.fieldOwner, this.fieldName, this.fieldDesc, owner, name, desc);
+    }
+
+    /**
+     * Gets the row of the method declared with the given ids, or {@link #NONE}.
+     */
+    public int findMethod(int owner, int name, int desc) {
+        return findMember(this.methodTable, this.methodOwner, this.methodName, this.methodDesc, owner, name, desc);
+    }
+
+    public String getFieldName(int row) {
+        return this.names[this.fieldDeobf[row]];
+    }
+
+    public String getMethodName(int row) {
+        return this.names[this.methodDeobf[row]];
+    }
+
+    /**
+     * Gets the parameter names of the given method indexed by LVT index, or
+     * {@code null} if it has no parameter mappings.
+     */
+    public String[] getParameters(int row) {
+        return this.methodParams[row];
+    }
+
+    private static int findMember(int[] table, int[] owners, int[] names, int[] descs, int owner, int name, int desc) {
+        if (owner == NONE || name == NONE)
+            return NONE;
+        final int mask = table.length - 1;
+        for (int slot = memberHash(owner, name, desc) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            final int row = table[slot] - 1;
+            if (owners[row] == owner && names[row] == name && descs[row] == desc)
+                return row;
+        }
+        return NONE;
+    }
+
+    private int[] memberTable(int[] owners, int[] names, int[] descs) {
+        final int[] table = new int[tableSize(owners.length)];
+        final int mask = table.length - 1;
+        for (int row = 0; row < owners.length; row++) {
+            int slot = memberHash(owners[row], names[row], descs[row]) & mask;
+            while (table[slot] != 0) {
+                final int other = table[slot] - 1;
+                // Mapped again later on, the later mapping wins
+                if (owners[other] == owners[row] && names[other] == names[row] && descs[other] == descs[row])
+                    break;
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = row + 1;
+        }
+        return table;
+    }
+
+    private static int tableSize(int count) {
+        int size = 16;
+        while (size < count * 2)
+            size <<= 1;
+        return size;
+    }
+
+    private static int memberHash(int owner, int name, int desc) {
+        return mix((owner * 31 + name) * 31 + desc);
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    /**
+     * Collects the mappings, as they are parsed, into growing arrays.
+     */
+    private static final class Builder implements TSrg2Parser.Sink {
+        final List<String> names = new ArrayList<>();
+        final Map<String, Integer> ids = new HashMap<>();
+        // Rows of classes by obfuscated name id, so classes mapped twice keep a single row
+        private final Map<Integer, Integer> classRows = new HashMap<>();
+
+        int[] classObf = new int[64], classDeobf = new int[64];
+        int classCount;
+        int[] fieldOwner = new int[64], fieldName = new int[64], fieldDesc = new int[64], fieldDeobf = new int[64];
+        int fieldCount;
+        int[] methodOwner = new int[64], methodName = new int[64], methodDesc = new int[64], methodDeobf = new int[64];
+        String[][] methodParams = new String[64][];
+        int methodCount;
+        private int owner = NONE;
+
+        int intern(String name) {
+            final Integer id = this.ids.get(name);
+            if (id != null)
+                return id;
+            this.ids.put(name, this.names.size());
+            this.names.add(name);
+            return this.names.size() - 1;
+        }
+
+        void add(ClassMapping<?, ?> cls) {
+            this.visitClass(cls.getFullObfuscatedName(), cls.getFullDeobfuscatedName());
+            for (FieldMapping field : cls.getFieldMappings())
+                this.visitField(field.getObfuscatedName(), field.getType().map(Object::toString).orElse(null), field.getDeobfuscatedName());
+            for (MethodMapping method : cls.getMethodMappings()) {
+                this.visitMethod(method.getObfuscatedName(), method.getObfuscatedDescriptor(), method.getDeobfuscatedName());
+                for (MethodParameterMapping param : method.getParameterMappings())
+                    this.visitParameter(param.getIndex(), param.getDeobfuscatedName());
+            }
+            for (ClassMapping<?, ?> inner : cls.getInnerClassMappings())
+                this.add(inner);
+        }
+
+        @Override
+        public void visitClass(String obf, String deobf) {
+            this.owner = this.intern(obf);
+            final Integer row = this.classRows.get(this.owner);
+            if (row != null) {
+                this.classDeobf[row] = this.intern(deobf);
+                return;
+            }
+            if (this.classCount == this.classObf.length) {
+                this.classObf = Arrays.copyOf(this.classObf, this.classCount * 2);
+                this.classDeobf = Arrays.copyOf(this.classDeobf, this.classCount * 2);
+            }
+            this.classRows.put(this.owner, this.classCount);
+            this.classObf[this.classCount] = this.owner;
+            this.classDeobf[this.classCount] = this.intern(deobf);
+            this.classCount++;
+        }
+
+        @Override
+        public void visitField(String obf, String descriptor, String deobf) {
+            if (this.fieldCount == this.fieldOwner.length) {
+                this.fieldOwner = Arrays.copyOf(this.fieldOwner, this.fieldCount * 2);
+                this.fieldName = Arrays.copyOf(this.fieldName, this.fieldCount * 2);
+                this.fieldDesc = Arrays.copyOf(this.fieldDesc, this.fieldCount * 2);
+                this.fieldDeobf = Arrays.copyOf(this.fieldDeobf, this.fieldCount * 2);
+            }
+            this.fieldOwner[this.fieldCount] = this.owner;
+            this.fieldName[this.fieldCount] = this.intern(obf);
+            this.fieldDesc[this.fieldCount] = descriptor == null ? NONE : this.intern(descriptor);
+            this.fieldDeobf[this.fieldCount] = this.intern(deobf);
+            this.fieldCount++;
+        }
+
+        @Override
+        public void visitMethod(String obf, String descriptor, String deobf) {
+            if (this.methodCount == this.methodOwner.length) {
+                this.methodOwner = Arrays.copyOf(this.methodOwner, this.methodCount * 2);
+                this.methodName = Arrays.copyOf(this.methodName, this.methodCount * 2);
+                this.methodDesc = Arrays.copyOf(this.methodDesc, this.methodCount * 2);
+                this.methodDeobf = Arrays.copyOf(this.methodDeobf, this.methodCount * 2);
+                this.methodParams = Arrays.copyOf(this.methodParams, this.methodCount * 2);
+            }
+            this.methodOwner[this.methodCount] = this.owner;
+            this.methodName[this.methodCount] = this.intern(obf);
+            this.methodDesc[this.methodCount] = this.intern(descriptor);
+            this.methodDeobf[this.methodCount] = this.intern(deobf);
+            this.methodCount++;
+        }
+
+        @Override
+        public void visitParameter(int index, String deobf) {
+            final int row = this.methodCount - 1;
+            String[] params = this.methodParams[row];
+            if (params == null || index >= params.length)
+                this.methodParams[row] = params = params == null ? new String[index + 1] : Arrays.copyOf(params, index + 1);
+            // Shares the interned instance
+            params[index] = this.names.get(this.intern(deobf));
+        }
+
+        CompactMappings build() {
+            // Inner classes are named after the mapped name of their outer class, like Lorenz does
+            final String[] full = new String[this.classCount];
+            for (int row = 0; row < this.classCount; row++)
+                this.fullName(row, full);
+            for (int row = 0; row < this.classCount; row++)
+                this.classDeobf[row] = this.intern(full[row]);
+            return new CompactMappings(this);
+        }
+
+        private String fullName(int row, String[] full) {
+            if (full[row] != null)
+                return full[row];
+            final String obf = this.names.get(this.classObf[row]);
+            final String deobf = this.names.get(this.classDeobf[row]);
+            final int split = obf.lastIndexOf('$');
+            if (split < 0)
+                return full[row] = deobf;
+            final String outer = this.fullName(obf.substring(0, split), full);
+            return full[row] = (outer == null ? obf.substring(0, split) : outer) + '$' + deobf.substring(deobf.lastIndexOf('$') + 1);
+        }
+
+        private String fullName(String name, String[] full) {
+            final Integer id = this.ids.get(name);
+            final Integer row = id == null ? null : this.classRows.get(id);
+            if (row != null)
+                return this.fullName(row, full);
+            final int split = name.lastIndexOf('$');
+            if (split < 0)
+                return null;
+            final String outer = this.fullName(name.substring(0, split), full);
+            return outer == null ? null : outer + name.substring(split);
+        }
+    }
+}
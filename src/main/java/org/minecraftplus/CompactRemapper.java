@@ -0,0 +1,130 @@
+package org.minecraftplus;
+
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.bombe.analysis.InheritanceProvider.ClassInfo;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.objectweb.asm.commons.Remapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link Remapper} reading {@link CompactMappings}, giving the same names as
+ * a LorenzRemapper over the completed mapping set.
+ * <p>
+ * Instead of copying the members of every parent class into its children up
+ * front, a member which is not mapped in its own class is looked up in the
+ * parents when it is referenced: first in the class itself, then in each parent
+ * in the order Lorenz completes them, only taking members the class can inherit.
+ * Members whose name is in no mapping are rejected without walking anything.
+ */
+public final class CompactRemapper extends Remapper {
+    private static final Hierarchy MISSING = new Hierarchy(null, Collections.emptyList());
+
+    private final CompactMappings mappings;
+    private final InheritanceProvider inheritanceProvider;
+    private final Map<String, Hierarchy> hierarchies = new ConcurrentHashMap<>();
+
+    public CompactRemapper(CompactMappings mappings, InheritanceProvider inheritanceProvider) {
+        this.mappings = mappings;
+        this.inheritanceProvider = inheritanceProvider;
+    }
+
+    public CompactMappings getMappings() {
+        return this.mappings;
+    }
+
+    @Override
+    public String map(String internalName) {
+        final String ret = this.mappings.mapClass(internalName);
+        return ret == null ? internalName : ret;
+    }
+
+    @Override
+    public String mapFieldName(String owner, String name, String descriptor) {
+        final int id = this.mappings.id(name);
+        if (id == CompactMappings.NONE)
+            return name;
+        int row = CompactMappings.NONE;
+        // A field mapped with its type wins over one mapped by name only
+        final int desc = this.mappings.id(descriptor);
+        if (desc != CompactMappings.NONE)
+            row = this.resolve(false, owner, id, desc);
+        if (row == CompactMappings.NONE)
+            row = this.resolve(false, owner, id, CompactMappings.NONE);
+        return row == CompactMappings.NONE ? name : this.mappings.getFieldName(row);
+    }
+
+    @Override
+    public String mapMethodName(String owner, String name, String descriptor) {
+        final int row = this.findMethod(owner, name, descriptor);
+        return row == CompactMappings.NONE ? name : this.mappings.getMethodName(row);
+    }
+
+    /**
+     * Gets the parameter names of the given method indexed by LVT index,
+     * or {@code null} if the method has no parameter mappings.
+     */
+    public String[] getParameters(String owner, String name, String descriptor) {
+        final int row = this.findMethod(owner, name, descriptor);
+        return row == CompactMappings.NONE ? null : this.mappings.getParameters(row);
+    }
+
+    private int findMethod(String owner, String name, String descriptor) {
+        final int id = this.mappings.id(name);
+        final int desc = this.mappings.id(descriptor);
+        if (id == CompactMappings.NONE || desc == CompactMappings.NONE)
+            return CompactMappings.NONE;
+        return this.resolve(true, owner, id, desc);
+    }
+
+    private int resolve(boolean method, String owner, int name, int desc) {
+        final int id = this.mappings.id(owner);
+        final int row = method ? this.mappings.findMethod(id, name, desc) : this.mappings.findField(id, name, desc);
+        if (row != CompactMappings.NONE)
+            return row;
+
+        final Hierarchy hierarchy = this.hierarchy(owner);
+        for (ClassInfo parent : hierarchy.parents) {
+            final int ret = this.resolve(method, parent.getName(), name, desc);
+            if (ret != CompactMappings.NONE && this.canInherit(parent, hierarchy.info, method, name, desc))
+                return ret;
+        }
+        return CompactMappings.NONE;
+    }
+
+    private boolean canInherit(ClassInfo parent, ClassInfo child, boolean method, int name, int desc) {
+        if (method)
+            return parent.canInherit(child, new MethodSignature(this.mappings.name(name), MethodDescriptor.of(this.mappings.name(desc))));
+        if (desc == CompactMappings.NONE)
+            return parent.canInherit(child, new FieldSignature(this.mappings.name(name)));
+        return parent.canInherit(child, new FieldSignature(this.mappings.name(name), FieldType.of(this.mappings.name(desc))));
+    }
+
+    private Hierarchy hierarchy(String owner) {
+        // Plain get first, computeIfAbsent locks even when the value is present
+        final Hierarchy ret = this.hierarchies.get(owner);
+        if (ret != null)
+            return ret;
+        return this.hierarchies.computeIfAbsent(owner, k -> {
+            final ClassInfo info = this.inheritanceProvider.provide(k).orElse(null);
+            return info == null ? MISSING : new Hierarchy(info, new ArrayList<>(info.provideParents(this.inheritanceProvider)));
+        });
+    }
+
+    private static final class Hierarchy {
+        final ClassInfo info;
+        final List<ClassInfo> parents;
+
+        Hierarchy(ClassInfo info, List<ClassInfo> parents) {
+            this.info = info;
+            this.parents = parents;
+        }
+    }
+}
@@ -1,13 +1,12 @@
 package org.minecraftplus;
 
 import org.cadixdev.atlas.AtlasTransformerContext;
+import org.cadixdev.bombe.analysis.InheritanceProvider;
 import org.cadixdev.bombe.jar.*;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.asm.LorenzRemapper;
 import org.minecraftplus.srgprocessor.Dictionary;
-import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.commons.ClassRemapper;
 import org.objectweb.asm.commons.Remapper;
 
@@ -20,28 +19,41 @@
 
 import static java.util.jar.Attributes.Name.MAIN_CLASS;
 
-public class EnhancedDeducingRemappingTransformer implements JarEntryTransformer, ExtendedDeducingClassRemapper.AbstractConsumer {
+public class EnhancedDeducingRemappingTransformer implements ClassStage, ExtendedDeducingClassRemapper.AbstractConsumer {
         private final boolean makeFFMeta;
-        private final Set<String> abstractParams = ConcurrentHashMap.newKeySet();
+        private final AbstractParameterNames abstractParams = new AbstractParameterNames();
 
-        public EnhancedDeducingRemappingTransformer(MappingSet mappings, Set<Dictionary> dictionaries, AtlasTransformerContext ctx, boolean makeFFMeta) {
+        public EnhancedDeducingRemappingTransformer(MappingSet mappings, ParameterIndex parameters, Set<Dictionary> dictionaries, AtlasTransformerContext ctx, boolean makeFFMeta) {
+            this(mappings, parameters, dictionaries, ctx.inheritanceProvider(), makeFFMeta);
+        }
+
+        public EnhancedDeducingRemappingTransformer(MappingSet mappings, ParameterIndex parameters, Set<Dictionary> dictionaries, InheritanceProvider inheritanceProvider, boolean makeFFMeta) {
+            this(new LorenzRemapper(mappings, inheritanceProvider), parameters, dictionaries, makeFFMeta);
+        }
+
+        public EnhancedDeducingRemappingTransformer(Remapper remapper, ParameterIndex parameters, Set<Dictionary> dictionaries, boolean makeFFMeta) {
             this.makeFFMeta = makeFFMeta;
-            this.remapper = new LorenzRemapper(mappings, ctx.inheritanceProvider());
-            this.clsRemapper = (cv, remapper) -> new ExtendedDeducingClassRemapper(
-                    cv, remapper, mappings, dictionaries, ctx.inheritanceProvider(), this);
+            this.remapper = remapper;
+            final ParameterNameDeducer deducer = new ParameterNameDeducer(this.remapper, dictionaries);
+            // Abstract parameter names are only collected for the metadata file
+            this.clsRemapper = (cv, rm) -> new ExtendedDeducingClassRemapper(
+                    cv, rm, parameters, deducer, makeFFMeta ? this : null);
         }
 
         @Override
         public List<AbstractJarEntry> additions() {
             if (!makeFFMeta || abstractParams.isEmpty())
                 return Collections.emptyList();
-            byte[] data = abstractParams.stream().sorted().collect(Collectors.joining("\n")).getBytes(StandardCharsets.UTF_8);
-            return Arrays.asList(new JarResourceEntry("fernflower_abstract_parameter_names.txt", 1, data));
+            return Arrays.asList(abstractParams.toEntry());
         }
 
         @Override
         public void storeNames(String className, String methodName, String methodDescriptor, Collection<String> paramNames) {
-            abstractParams.add(className + ' ' + methodName + ' ' + methodDescriptor + ' ' + paramNames.stream().collect(Collectors.joining(" ")));
+            abstractParams.add(className, methodName, methodDescriptor, paramNames);
+        }
+
+        public AbstractParameterNames getAbstractParameterNames() {
+            return abstractParams;
         }
 
 
@@ -53,19 +65,14 @@ public void storeNames(String className, String methodName, String methodDescrip
         private final Remapper remapper;
         protected final BiFunction<ClassVisitor, Remapper, ClassRemapper> clsRemapper;
         @Override
-        public JarClassEntry transform(final JarClassEntry entry) {
+        public ClassVisitor createVisitor(final ClassVisitor parent) {
             // Remap the class
-            final ClassReader reader = new ClassReader(entry.getContents());
-            final ClassWriter writer = new ClassWriter(reader, 0);
-            reader.accept(this.clsRemapper.apply(
-                    writer,
-                    this.remapper
-            ), 0);
-
-            // Create the jar entry
-            final String originalName = entry.getName().substring(0, entry.getName().length() - ".class".length());
-            final String name = this.remapper.map(originalName) + ".class";
-            return new JarClassEntry(name, entry.getTime(), writer.toByteArray());
+            return this.clsRemapper.apply(parent, this.remapper);
+        }
+
+        @Override
+        public String mapClassName(final String name) {
+            return this.remapper.map(name);
         }
 
         @Override
@@ -1,11 +1,7 @@
 package org.minecraftplus;
 
-import org.cadixdev.bombe.analysis.InheritanceProvider;
-import org.cadixdev.bombe.type.signature.MethodSignature;
-import org.cadixdev.lorenz.MappingSet;
-import org.cadixdev.lorenz.model.ClassMapping;
-import org.cadixdev.lorenz.model.Mapping;
-import org.minecraftplus.srgprocessor.Dictionary;
+import org.minecraftplus.jfr.DeductionEvent;
+import org.minecraftplus.jfr.Jfr;
 import org.minecraftplus.srgprocessor.Utils;
 import org.objectweb.asm.*;
 import org.objectweb.asm.commons.ClassRemapper;
@@ -13,26 +9,35 @@
 import org.objectweb.asm.commons.Remapper;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-class ExtendedDeducingClassRemapper extends ClassRemapper {
+class ExtendedDeducingClassRemapper extends ClassRemapper implements ChangeTracking {
 
     interface AbstractConsumer {
         void storeNames(String className, String methodName, String methodDescriptor, Collection<String> paramNames);
     }
 
-    private final MappingSet mappings;
-    private final Set<org.minecraftplus.srgprocessor.Dictionary> dictionaries;
-    private final InheritanceProvider inheritanceProvider;
+    private final ParameterIndex parameters;
+    private final ParameterNameDeducer deducer;
     private final AbstractConsumer abstractConsumer;
+    private final ChangeTrackingRemapper tracker;
+    private DeductionEvent event;
+    private int deduced;
 
-    ExtendedDeducingClassRemapper(ClassVisitor classVisitor, Remapper remapper, MappingSet mappings, Set<org.minecraftplus.srgprocessor.Dictionary> dictionaries, InheritanceProvider inheritanceProvider, AbstractConsumer abstractConsumer) {
+    ExtendedDeducingClassRemapper(ClassVisitor classVisitor, Remapper remapper, ParameterIndex parameters, ParameterNameDeducer deducer, AbstractConsumer abstractConsumer) {
+        this(classVisitor, new ChangeTrackingRemapper(remapper), parameters, deducer, abstractConsumer);
+    }
+
+    private ExtendedDeducingClassRemapper(ClassVisitor classVisitor, ChangeTrackingRemapper remapper, ParameterIndex parameters, ParameterNameDeducer deducer, AbstractConsumer abstractConsumer) {
         super(classVisitor, remapper);
-        this.mappings = mappings;
-        this.dictionaries = dictionaries;
-        this.inheritanceProvider = inheritanceProvider;
+        this.parameters = parameters;
+        this.deducer = deducer;
         this.abstractConsumer = abstractConsumer;
+        this.tracker = remapper;
+    }
+
+    @Override
+    public boolean hasChanged() {
+        return tracker.hasChanged();
     }
 
 
@@ -42,9 +47,23 @@ interface AbstractConsumer {
 
     @Override
     public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        if (Jfr.AVAILABLE) {
+            event = new DeductionEvent();
+            event.begin();
+        }
         super.visit(version, access, name, signature, superName, interfaces);
     }
 
+    @Override
+    public void visitEnd() {
+        super.visitEnd();
+        if (event != null) {
+            event.className = className;
+            event.parameters = deduced;
+            event.commit();
+        }
+    }
+
     @Override
     public MethodVisitor visitMethod(final int access, final String mname, final String mdescriptor, final String msignature, final String[] exceptions) {
         // Clear used names on each pass
@@ -56,14 +75,15 @@ public MethodVisitor visitMethod(final int access, final String mname, final Str
         if (methodVisitor == null)
             return null;
 
-        if ((access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0)
-            renameAbstract(access, mname, mdescriptor, remappedDescriptor, usedNames);
+        final String[] params = parameters.getParameters(className, mname, mdescriptor);
+        if (abstractConsumer != null && (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0)
+            renameAbstract(access, mname, mdescriptor, params, remappedDescriptor, usedNames);
 
         return new MethodRemapper(methodVisitor, remapper) {
             @Override
             public void visitLocalVariable(final String pname, final String pdescriptor, final String psignature, final Label start, final Label end, final int index) {
-                String rename = mapParameterName(className, mname, mdescriptor, index, pname, pdescriptor, usedNames);
-                super.visitLocalVariable(checkName(rename), pdescriptor, psignature, start, end, index);
+                String rename = mapParameterName(className, mname, mdescriptor, params, index, pname, pdescriptor, usedNames);
+                super.visitLocalVariable(tracker.track(pname, checkName(rename)), pdescriptor, psignature, start, end, index);
             }
 
             private String checkName(String name) {
@@ -106,18 +126,10 @@ public void visitInvokeDynamicInsn(final String name, final String descriptor, f
         };
     }
 
-    private ClassMapping<?, ?> getCompletedClassMapping(final String owner) {
-        final ClassMapping<?, ?> mapping = this.mappings.getOrCreateClassMapping(owner);
-        mapping.complete(this.inheritanceProvider);
-        return mapping;
-    }
-
-    public String mapParameterName(final String owner, final String methodName, final String methodDescriptor, final int index, final String paramName, String pdescriptor, Set<String> usedNames) {
-        return this.getCompletedClassMapping(owner)
-                .getMethodMapping(MethodSignature.of(methodName, methodDescriptor))
-                .flatMap(m -> m.getParameterMapping(index))
-                .map(Mapping::getDeobfuscatedName)
-                .orElse(deduceName(owner, methodName, methodDescriptor, index, paramName, pdescriptor, usedNames));
+    public String mapParameterName(final String owner, final String methodName, final String methodDescriptor, final String[] params, final int index, final String paramName, String pdescriptor, Set<String> usedNames) {
+        // Only deduce when there is no mapping, deduced names are reserved in usedNames
+        final String mapped = ParameterIndex.getParameter(params, index);
+        return mapped != null ? mapped : deduceName(owner, methodName, methodDescriptor, index, paramName, pdescriptor, usedNames);
     }
 
     public String deduceName(final String owner, final String methodName, final String methodDescriptor, final int index, final String paramName, String pdescriptor, Set<String> usedNames) {
@@ -125,46 +137,8 @@ public String deduceName(final String owner, final String methodName, final Stri
         if (paramName.equalsIgnoreCase("this"))
             return paramName;
 
-        // Find parameter type class from descriptor
-        String parameterDescriptor = remapper.mapDesc(pdescriptor);
-        String parameterType;
-        Matcher matcher = Utils.DESC.matcher(parameterDescriptor);
-        if (matcher.find()) {
-            parameterType = matcher.group("cls");
-            if (parameterType == null)
-                parameterType = matcher.group();
-        } else
-            throw new IllegalStateException("Invalid prameter descriptor: " + parameterDescriptor);
-
-        // Extract only class name from type
-        String parameterName = parameterType.substring(parameterType.lastIndexOf("/") + 1);
-        parameterName = parameterName.substring(parameterName.lastIndexOf("$") + 1); // Use last inner class name
-
-        // Add 'a' prefix to parameters which are arrays
-        if (parameterDescriptor.startsWith("["))//parameterDescriptor.isArray())
-            parameterName = "a" + parameterName;
-
-        // Deduce parameter name from class type and rules in dictionary
-        for (org.minecraftplus.srgprocessor.Dictionary dictionary : dictionaries) {
-            for (Map.Entry<org.minecraftplus.srgprocessor.Dictionary.Trigger, org.minecraftplus.srgprocessor.Dictionary.Action> rule : dictionary.getRules().entrySet()) {
-                org.minecraftplus.srgprocessor.Dictionary.Trigger trigger = rule.getKey();
-
-                Pattern filter = trigger.getFilter();
-                if (filter != null && !filter.matcher(parameterType).matches()) {
-                    continue; // Skip dictionary replaces if filter not pass
-                }
-
-                Pattern pattern = trigger.getPattern();
-                Dictionary.Action action = rule.getValue();
-                Matcher ruleMatcher = pattern.matcher(parameterName);
-                if (ruleMatcher.matches()) { // Only one replace at time
-                    parameterName = action.act(ruleMatcher);
-                }
-            }
-        }
-
-        // Always lowercase parameter name
-        String deduced = parameterName.toLowerCase(Locale.ROOT);
+        String deduced = deducer.deduce(pdescriptor);
+        this.deduced++;
 
         // Store used name and add number after if duplicates
         int counter = 1;
@@ -177,7 +151,7 @@ public String deduceName(final String owner, final String methodName, final Stri
         return ret;
     }
 
-    private void renameAbstract(int access, String name, String descriptor, String pdescriptor, Set<String> usedNames) {
+    private void renameAbstract(int access, String name, String descriptor, String[] params, String pdescriptor, Set<String> usedNames) {
         Type[] types = Type.getArgumentTypes(descriptor);
         if (types.length == 0)
             return;
@@ -185,7 +159,7 @@ private void renameAbstract(int access, String name, String descriptor, String p
         List<String> names = new ArrayList<>();
         int i = (access & Opcodes.ACC_STATIC) == 0 ? 1 : 0;
         for (Type type : types) {
-            names.add(mapParameterName(className, name, descriptor, i, "var" + i, pdescriptor, usedNames));
+            names.add(mapParameterName(className, name, descriptor, params, i, "var" + i, pdescriptor, usedNames));
             i += type.getSize();
         }
 
@@ -0,0 +1,151 @@
+package org.minecraftplus;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the messages of a run from a single writer thread, so workers never
+ * wait on the output stream.
+ * <p>
+ * Workers collect the messages about a class in a {@link Buffer}, handed over
+ * once the class is done, so the lines of every class stay together. Messages
+ * are written in the order they are handed over.
+ */
+public class Log implements Closeable {
+    public enum Level {
+        /** Nothing is written. */
+        QUIET,
+        /** What the transformers changed. */
+        INFO,
+        /** Also what the transformers considered. */
+        DEBUG
+    }
+
+    private static final Log NONE = new Log(null, Level.QUIET);
+
+    private final PrintStream out;
+    private final Level level;
+    private final ExecutorService writer;
+
+    public Log(PrintStream out, Level level) {
+        this.out = out;
+        this.level = level;
+        if (level == Level.QUIET) {
+            this.writer = null;
+        } else {
+            // A single thread keeps the order. It stops when idle, so logs left open don't keep it,
+            // but it isn't a daemon, so messages handed over before a failure are still written
+            ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    r -> new Thread(r, "Vignette Log"));
+            writer.allowCoreThreadTimeOut(true);
+            this.writer = writer;
+        }
+    }
+
+    /**
+     * Gets the log writing nothing, used by the engine and transformers not
+     * given a log of their own.
+     */
+    public static Log none() {
+        return NONE;
+    }
+
+    public boolean isEnabled(Level level) {
+        return level != Level.QUIET && level.compareTo(this.level) <= 0;
+    }
+
+    public void info(String message) {
+        if (isEnabled(Level.INFO))
+            write(message + System.lineSeparator());
+    }
+
+    public void debug(String message) {
+        if (isEnabled(Level.DEBUG))
+            write(message + System.lineSeparator());
+    }
+
+    /**
+     * Creates a buffer for the messages about a single class.
+     */
+    public Buffer buffer() {
+        return new Buffer();
+    }
+
+    private void write(String text) {
+        writer.execute(() -> {
+            out.print(text);
+            out.flush();
+        });
+    }
+
+    /**
+     * Waits until every message handed over so far is written.
+     */
+    public void sync() {
+        if (writer == null)
+            return;
+        try {
+            writer.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes the remaining messages and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        sync();
+        if (writer != null)
+            writer.shutdown();
+    }
+
+    /**
+     * Collects the messages about a class on the worker transforming it, until
+     * they are {@link #flush() flushed} to the writer thread together.
+     */
+    public class Buffer {
+        private StringBuilder text;
+
+        private Buffer() {
+        }
+
+        public boolean isEnabled(Level level) {
+            return Log.this.isEnabled(level);
+        }
+
+        public void info(String message) {
+            if (isEnabled(Level.INFO))
+                append(message);
+        }
+
+        public void debug(String message) {
+            if (isEnabled(Level.DEBUG))
+                append(message);
+        }
+
+        private void append(String message) {
+            if (text == null)
+                text = new StringBuilder();
+            text.append(message).append(System.lineSeparator());
+        }
+
+        /**
+         * Hands the collected messages to the writer thread.
+         */
+        public void flush() {
+            if (text != null && text.length() > 0) {
+                write(text.toString());
+                text.setLength(0);
+            }
+        }
+    }
+}
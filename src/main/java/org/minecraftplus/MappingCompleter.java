@@ -0,0 +1,168 @@
+package org.minecraftplus;
+
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Completes the class mappings of a set of classes, and all their parents, with
+ * inherited members before any class is transformed.
+ * <p>
+ * The hierarchy is first walked in parallel and a mapping is created for every
+ * class found, then the classes are completed with fork-join, every class once
+ * its parents are complete. Afterwards {@link ClassMapping#complete} returns
+ * straight away, so transformation only reads the mappings.
+ */
+public final class MappingCompleter {
+    private final MappingSet mappings;
+    private final InheritanceProvider inheritanceProvider;
+    private final Supplier<? extends Collection<String>> classNames;
+    private final int parallelism;
+    private volatile boolean completed;
+
+    /**
+     * @param classNames the classes to complete, usually the input classes and the classes they reference
+     * @param parallelism the number of threads to complete with
+     */
+    public MappingCompleter(MappingSet mappings, InheritanceProvider inheritanceProvider, Collection<String> classNames, int parallelism) {
+        this(mappings, inheritanceProvider, () -> classNames, parallelism);
+    }
+
+    /**
+     * @param classNames gets the classes to complete once the mappings are completed
+     * @param parallelism the number of threads to complete with
+     */
+    public MappingCompleter(MappingSet mappings, InheritanceProvider inheritanceProvider, Supplier<? extends Collection<String>> classNames, int parallelism) {
+        this.mappings = mappings;
+        this.inheritanceProvider = inheritanceProvider;
+        this.classNames = classNames;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Completes the mappings, only the first call does any work.
+     */
+    public void complete() {
+        if (this.completed)
+            return;
+        synchronized (this) {
+            if (this.completed)
+                return;
+
+            final Collection<String> classNames = this.classNames.get();
+            final ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+            try {
+                final Map<String, Node> nodes = new ConcurrentHashMap<>();
+                pool.invoke(new Discover(nodes, classNames));
+
+                // Created up front, completing only adds members to the mapping being completed
+                for (Node node : nodes.values())
+                    node.mapping = this.mappings.getOrCreateClassMapping(node.name);
+
+                pool.invoke(new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        final List<Node> roots = new ArrayList<>();
+                        for (String name : classNames) {
+                            final Node node = nodes.get(name);
+                            if (node != null && node.claim())
+                                roots.add(node);
+                        }
+                        invokeAll(roots);
+                    }
+                });
+            } finally {
+                pool.shutdown();
+            }
+            this.completed = true;
+        }
+    }
+
+    /**
+     * Finds the parents of the given classes, and of theirs.
+     */
+    private class Discover extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, Node> nodes;
+        private final Collection<String> names;
+
+        Discover(Map<String, Node> nodes, Collection<String> names) {
+            this.nodes = nodes;
+            this.names = names;
+        }
+
+        @Override
+        protected void compute() {
+            final List<Discover> tasks = new ArrayList<>();
+            final List<Node> found = new ArrayList<>();
+            for (String name : this.names) {
+                final Node node = new Node(name);
+                if (this.nodes.putIfAbsent(name, node) != null)
+                    continue;
+                found.add(node);
+                final Optional<InheritanceProvider.ClassInfo> info = inheritanceProvider.provide(name);
+                if (!info.isPresent())
+                    continue;
+
+                final List<String> parents = new ArrayList<>(info.get().getInterfaces().size() + 1);
+                if (info.get().getSuperName() != null)
+                    parents.add(info.get().getSuperName());
+                parents.addAll(info.get().getInterfaces());
+                node.parents = parents;
+                tasks.add(new Discover(this.nodes, parents));
+            }
+            invokeAll(tasks);
+            // Every parent has a node once the tasks finished
+            for (Node node : found) {
+                for (String parent : node.parents)
+                    node.parentNodes.add(this.nodes.get(parent));
+            }
+        }
+    }
+
+    private final class Node extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final String name;
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final List<Node> parentNodes = new ArrayList<>();
+        List<String> parents = new ArrayList<>();
+        ClassMapping<?, ?> mapping;
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        boolean claim() {
+            return this.claimed.compareAndSet(false, true);
+        }
+
+        @Override
+        protected void compute() {
+            // Parents claimed by another task are waited for, the rest are run here
+            final List<Node> claimed = new ArrayList<>();
+            for (Node parent : this.parentNodes) {
+                if (parent.claim())
+                    claimed.add(parent);
+            }
+            invokeAll(claimed);
+            for (Node parent : this.parentNodes)
+                parent.join();
+            this.mapping.complete(inheritanceProvider);
+        }
+    }
+}
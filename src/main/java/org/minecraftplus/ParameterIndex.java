@@ -0,0 +1,131 @@
+package org.minecraftplus;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.MethodParameterMapping;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Read-only index of the parameter mappings, keyed by owner, method name,
+ * method descriptor and LVT index.
+ * <p>
+ * The index is built once before any class is transformed, so the lookups
+ * done for every local variable neither allocate nor touch the mapping set.
+ */
+public final class ParameterIndex {
+    private final Supplier<Map<String, Map<String, Map<String, String[]>>>> builder;
+    private final CompactRemapper compact;
+    private volatile Map<String, Map<String, Map<String, String[]>>> classes;
+
+    private ParameterIndex(Supplier<Map<String, Map<String, Map<String, String[]>>>> builder, CompactRemapper compact) {
+        this.builder = builder;
+        this.compact = compact;
+    }
+
+    /**
+     * Builds the index for the given classes. Their mappings are expected to be
+     * completed already, see {@link MappingCompleter}, so inherited parameter
+     * names are included.
+     */
+    public static ParameterIndex build(MappingSet mappings, Collection<String> classNames) {
+        final ParameterIndex index = lazy(mappings, classNames);
+        index.prepare();
+        return index;
+    }
+
+    /**
+     * Creates an index which is only built on the first lookup, for runs
+     * where no class may need to be transformed.
+     *
+     * @see #build(MappingSet, Collection)
+     */
+    public static ParameterIndex lazy(MappingSet mappings, Collection<String> classNames) {
+        return new ParameterIndex(() -> index(mappings, classNames), null);
+    }
+
+    /**
+     * Creates an index reading the parameters of {@link CompactMappings} through
+     * the given remapper, which already keeps them by LVT index.
+     */
+    public static ParameterIndex of(CompactRemapper remapper) {
+        return new ParameterIndex(Collections::emptyMap, remapper);
+    }
+
+    private static Map<String, Map<String, Map<String, String[]>>> index(MappingSet mappings, Collection<String> classNames) {
+        final Map<String, Map<String, Map<String, String[]>>> classes = new HashMap<>();
+        for (String className : classNames) {
+            final ClassMapping<?, ?> mapping = mappings.getClassMapping(className).orElse(null);
+            if (mapping == null)
+                continue;
+
+            final Map<String, Map<String, String[]>> methods = new HashMap<>();
+            for (MethodMapping method : mapping.getMethodMappings()) {
+                final Collection<MethodParameterMapping> params = method.getParameterMappings();
+                if (params.isEmpty())
+                    continue;
+
+                int max = 0;
+                for (MethodParameterMapping param : params)
+                    max = Math.max(max, param.getIndex());
+                final String[] names = new String[max + 1];
+                for (MethodParameterMapping param : params)
+                    names[param.getIndex()] = param.getDeobfuscatedName();
+
+                methods.computeIfAbsent(method.getObfuscatedName(), k -> new HashMap<>())
+                    .put(method.getObfuscatedDescriptor(), names);
+            }
+
+            if (!methods.isEmpty())
+                classes.put(className, methods);
+        }
+        return classes;
+    }
+
+    /**
+     * Builds the index now if it was created {@link #lazy lazily}, so that it
+     * is not built while the mappings are used by other threads.
+     */
+    public void prepare() {
+        this.classes();
+    }
+
+    private Map<String, Map<String, Map<String, String[]>>> classes() {
+        Map<String, Map<String, Map<String, String[]>>> ret = this.classes;
+        if (ret == null) {
+            synchronized (this) {
+                ret = this.classes;
+                if (ret == null)
+                    this.classes = ret = this.builder.get();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the parameter names of the given method indexed by LVT index,
+     * or {@code null} if the method has no parameter mappings.
+     */
+    public String[] getParameters(final String owner, final String methodName, final String methodDescriptor) {
+        if (this.compact != null)
+            return this.compact.getParameters(owner, methodName, methodDescriptor);
+        final Map<String, Map<String, String[]>> methods = this.classes().get(owner);
+        if (methods == null)
+            return null;
+        final Map<String, String[]> descriptors = methods.get(methodName);
+        return descriptors == null ? null : descriptors.get(methodDescriptor);
+    }
+
+    /**
+     * Gets the mapped name of a parameter from the names returned by
+     * {@link #getParameters(String, String, String)}, or {@code null} if it is not mapped.
+     */
+    public static String getParameter(final String[] params, final int index) {
+        return params == null || index < 0 || index >= params.length ? null : params[index];
+    }
+}
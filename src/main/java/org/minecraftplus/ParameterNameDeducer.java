@@ -0,0 +1,65 @@
+package org.minecraftplus;
+
+import org.minecraftplus.srgprocessor.Dictionary;
+import org.minecraftplus.srgprocessor.Utils;
+import org.objectweb.asm.commons.Remapper;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+
+/**
+ * Deduces base parameter names from parameter types using the dictionaries.
+ * <p>
+ * The result only depends on the parameter descriptor, so it is cached per
+ * descriptor and shared by all worker threads. Resolving duplicate names
+ * within a method is left to the caller.
+ */
+class ParameterNameDeducer {
+    private final Remapper remapper;
+    private final Set<Dictionary> dictionaries;
+    private final Map<String, String> baseNames = new ConcurrentHashMap<>();
+
+    ParameterNameDeducer(Remapper remapper, Set<Dictionary> dictionaries) {
+        this.remapper = remapper;
+        this.dictionaries = dictionaries;
+    }
+
+    public String deduce(final String descriptor) {
+        // Plain get first, computeIfAbsent locks even when the value is present
+        String ret = baseNames.get(descriptor);
+        if (ret == null)
+            ret = baseNames.computeIfAbsent(descriptor, this::compute);
+        return ret;
+    }
+
+    private String compute(final String descriptor) {
+        // Find parameter type class from descriptor
+        String parameterDescriptor = remapper.mapDesc(descriptor);
+        String parameterType;
+        Matcher matcher = Utils.DESC.matcher(parameterDescriptor);
+        if (matcher.find()) {
+            parameterType = matcher.group("cls");
+            if (parameterType == null)
+                parameterType = matcher.group();
+        } else
+            throw new IllegalStateException("Invalid prameter descriptor: " + parameterDescriptor);
+
+        // Extract only class name from type
+        String parameterName = parameterType.substring(parameterType.lastIndexOf("/") + 1);
+        parameterName = parameterName.substring(parameterName.lastIndexOf("$") + 1); // Use last inner class name
+
+        // Add 'a' prefix to parameters which are arrays
+        if (parameterDescriptor.startsWith("["))//parameterDescriptor.isArray())
+            parameterName = "a" + parameterName;
+
+        // Deduce parameter name from class type and rules in dictionary
+        for (Dictionary dictionary : dictionaries)
+            parameterName = dictionary.apply(parameterName, parameterType);
+
+        // Always lowercase parameter name
+        return parameterName.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,531 @@
+package org.minecraftplus;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.RecordComponentVisitor;
+import org.objectweb.asm.TypePath;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the time spent in every stage of {@link ClassStageChain}s, and in
+ * every class they transform.
+ * <p>
+ * Every class is timed as a whole. Only every {@value #SAMPLE}th class is split
+ * between the stages: a timing visitor is put in front of every stage and of the
+ * writer, it adds the time of each event to its own stage and takes it from the
+ * stage calling it, so every stage is only charged for its own work although the
+ * stages are fused. The split of the sampled classes is scaled to the time of all
+ * classes, so timing the events of a few classes doesn't inflate the totals.
+ */
+public class StageTimings {
+    public static final String READER = "ClassReader";
+    public static final String WRITER = "ClassWriter";
+    static final int SAMPLE = 16;
+
+    private final List<String> names = new CopyOnWriteArrayList<>();
+    private final List<LongAdder> stages = new CopyOnWriteArrayList<>();
+    private final AtomicLong seen = new AtomicLong();
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sampledTotal = new LongAdder();
+    private final int slowestCount;
+    // The slowest classes, the fastest of them first
+    private final PriorityQueue<ClassTime> slowest = new PriorityQueue<>(Comparator.comparingLong(ClassTime::getNanos));
+    private volatile long slowestThreshold = Long.MIN_VALUE;
+
+    /**
+     * @param slowestCount the number of slowest classes to keep
+     */
+    public StageTimings(int slowestCount) {
+        this.slowestCount = slowestCount;
+    }
+
+    /**
+     * Gets the slot of the given stage, registering it if it is new. Stages are
+     * listed in the order they were registered.
+     */
+    synchronized int register(String stage) {
+        int ret = names.indexOf(stage);
+        if (ret < 0) {
+            stages.add(new LongAdder());
+            names.add(stage);
+            ret = names.size() - 1;
+        }
+        return ret;
+    }
+
+    /**
+     * Checks whether the next class is split between the stages, the first class always is.
+     */
+    boolean sample() {
+        return seen.getAndIncrement() % SAMPLE == 0;
+    }
+
+    /**
+     * Adds the time of a class.
+     *
+     * @param times the time of every stage slot, if the class was {@link #sample sampled}
+     */
+    void addClass(String name, long nanos, long[] times) {
+        total.add(nanos);
+        if (times != null) {
+            sampledTotal.add(nanos);
+            for (int i = 0; i < times.length; i++) {
+                if (times[i] != 0)
+                    stages.get(i).add(times[i]);
+            }
+        }
+
+        if (slowestCount <= 0 || nanos <= slowestThreshold)
+            return;
+        synchronized (slowest) {
+            slowest.add(new ClassTime(name, nanos));
+            if (slowest.size() > slowestCount)
+                slowest.poll();
+            if (slowest.size() == slowestCount)
+                slowestThreshold = slowest.peek().getNanos();
+        }
+    }
+
+    /**
+     * Wraps the visitor of a stage, or of the writer, of a sampled class.
+     *
+     * @param times the time of every stage slot of the class
+     * @param stage the slot of the stage the visitor belongs to
+     * @param caller the slot of the stage calling the visitor
+     */
+    ClassVisitor wrap(ClassVisitor visitor, long[] times, int stage, int caller) {
+        return new TimingClassVisitor(visitor, times, stage, caller);
+    }
+
+    /**
+     * Gets the time of every stage in nanoseconds, summed over all threads, in the order they were first seen.
+     */
+    public Map<String, Long> getStageTimes() {
+        final long sampled = sampledTotal.sum();
+        final double scale = sampled == 0 ? 0 : (double) total.sum() / sampled;
+        Map<String, Long> ret = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++)
+            ret.put(names.get(i), Math.round(stages.get(i).sum() * scale));
+        return ret;
+    }
+
+    /**
+     * Gets the given number of slowest classes, slowest first.
+     */
+    public List<ClassTime> getSlowestClasses(int count) {
+        final List<ClassTime> ret;
+        synchronized (slowest) {
+            ret = new ArrayList<>(slowest);
+        }
+        ret.sort(Comparator.comparingLong(ClassTime::getNanos).reversed());
+        return ret.size() > count ? new ArrayList<>(ret.subList(0, count)) : ret;
+    }
+
+    public static final class ClassTime {
+        private final String name;
+        private final long nanos;
+
+        ClassTime(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    private static final class TimingClassVisitor extends ClassVisitor {
+        private final long[] times;
+        private final int own;
+        private final int caller;
+
+        TimingClassVisitor(ClassVisitor parent, long[] times, int own, int caller) {
+            super(Opcodes.ASM9, parent);
+            this.times = times;
+            this.own = own;
+            this.caller = caller;
+        }
+
+        private void charge(long start) {
+            long time = System.nanoTime() - start;
+            times[own] += time;
+            times[caller] -= time;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            long start = System.nanoTime();
+            super.visit(version, access, name, signature, superName, interfaces);
+            charge(start);
+        }
+
+        @Override
+        public void visitSource(String source, String debug) {
+            long start = System.nanoTime();
+            super.visitSource(source, debug);
+            charge(start);
+        }
+
+        @Override
+        public ModuleVisitor visitModule(String name, int access, String version) {
+            long start = System.nanoTime();
+            ModuleVisitor ret = super.visitModule(name, access, version);
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public void visitNestHost(String nestHost) {
+            long start = System.nanoTime();
+            super.visitNestHost(nestHost);
+            charge(start);
+        }
+
+        @Override
+        public void visitOuterClass(String owner, String name, String descriptor) {
+            long start = System.nanoTime();
+            super.visitOuterClass(owner, name, descriptor);
+            charge(start);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            long start = System.nanoTime();
+            AnnotationVisitor ret = super.visitAnnotation(descriptor, visible);
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+            long start = System.nanoTime();
+            AnnotationVisitor ret = super.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public void visitAttribute(Attribute attribute) {
+            long start = System.nanoTime();
+            super.visitAttribute(attribute);
+            charge(start);
+        }
+
+        @Override
+        public void visitNestMember(String nestMember) {
+            long start = System.nanoTime();
+            super.visitNestMember(nestMember);
+            charge(start);
+        }
+
+        @Override
+        public void visitPermittedSubclass(String permittedSubclass) {
+            long start = System.nanoTime();
+            super.visitPermittedSubclass(permittedSubclass);
+            charge(start);
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            long start = System.nanoTime();
+            super.visitInnerClass(name, outerName, innerName, access);
+            charge(start);
+        }
+
+        @Override
+        public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+            long start = System.nanoTime();
+            RecordComponentVisitor ret = super.visitRecordComponent(name, descriptor, signature);
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            long start = System.nanoTime();
+            FieldVisitor ret = super.visitField(access, name, descriptor, signature, value);
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            long start = System.nanoTime();
+            MethodVisitor ret = super.visitMethod(access, name, descriptor, signature, exceptions);
+            charge(start);
+            // Method bodies are most of the work, so their events are timed as well
+            return ret == null ? null : new TimingMethodVisitor(ret, times, own, caller);
+        }
+
+        @Override
+        public void visitEnd() {
+            long start = System.nanoTime();
+            super.visitEnd();
+            charge(start);
+        }
+    }
+
+    private static final class TimingMethodVisitor extends MethodVisitor {
+        private final long[] times;
+        private final int own;
+        private final int caller;
+
+        TimingMethodVisitor(MethodVisitor parent, long[] times, int own, int caller) {
+            super(Opcodes.ASM9, parent);
+            this.times = times;
+            this.own = own;
+            this.caller = caller;
+        }
+
+        private void charge(long start) {
+            long time = System.nanoTime() - start;
+            times[own] += time;
+            times[caller] -= time;
+        }
+
+        @Override
+        public void visitParameter(String name, int access) {
+            long start = System.nanoTime();
+            super.visitParameter(name, access);
+            charge(start);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+            long start = System.nanoTime();
+            AnnotationVisitor ret = super.visitAnnotationDefault();
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            long start = System.nanoTime();
+            AnnotationVisitor ret = super.visitAnnotation(descriptor, visible);
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+            long start = System.nanoTime();
+            AnnotationVisitor ret = super.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+            long start = System.nanoTime();
+            super.visitAnnotableParameterCount(parameterCount, visible);
+            charge(start);
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+            long start = System.nanoTime();
+            AnnotationVisitor ret = super.visitParameterAnnotation(parameter, descriptor, visible);
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public void visitAttribute(Attribute attribute) {
+            long start = System.nanoTime();
+            super.visitAttribute(attribute);
+            charge(start);
+        }
+
+        @Override
+        public void visitCode() {
+            long start = System.nanoTime();
+            super.visitCode();
+            charge(start);
+        }
+
+        @Override
+        public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+            long start = System.nanoTime();
+            super.visitFrame(type, numLocal, local, numStack, stack);
+            charge(start);
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            long start = System.nanoTime();
+            super.visitInsn(opcode);
+            charge(start);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            long start = System.nanoTime();
+            super.visitIntInsn(opcode, operand);
+            charge(start);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            long start = System.nanoTime();
+            super.visitVarInsn(opcode, var);
+            charge(start);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            long start = System.nanoTime();
+            super.visitTypeInsn(opcode, type);
+            charge(start);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            long start = System.nanoTime();
+            super.visitFieldInsn(opcode, owner, name, descriptor);
+            charge(start);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            long start = System.nanoTime();
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+            charge(start);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+            long start = System.nanoTime();
+            super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+            charge(start);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            long start = System.nanoTime();
+            super.visitJumpInsn(opcode, label);
+            charge(start);
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            long start = System.nanoTime();
+            super.visitLabel(label);
+            charge(start);
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+            long start = System.nanoTime();
+            super.visitLdcInsn(value);
+            charge(start);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            long start = System.nanoTime();
+            super.visitIincInsn(var, increment);
+            charge(start);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            long start = System.nanoTime();
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+            charge(start);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            long start = System.nanoTime();
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+            charge(start);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+            long start = System.nanoTime();
+            super.visitMultiANewArrayInsn(descriptor, numDimensions);
+            charge(start);
+        }
+
+        @Override
+        public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+            long start = System.nanoTime();
+            AnnotationVisitor ret = super.visitInsnAnnotation(typeRef, typePath, descriptor, visible);
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label startLabel, Label end, Label handler, String type) {
+            long start = System.nanoTime();
+            super.visitTryCatchBlock(startLabel, end, handler, type);
+            charge(start);
+        }
+
+        @Override
+        public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+            long start = System.nanoTime();
+            AnnotationVisitor ret = super.visitTryCatchAnnotation(typeRef, typePath, descriptor, visible);
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public void visitLocalVariable(String name, String descriptor, String signature, Label startLabel, Label end, int index) {
+            long start = System.nanoTime();
+            super.visitLocalVariable(name, descriptor, signature, startLabel, end, index);
+            charge(start);
+        }
+
+        @Override
+        public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] startLabels, Label[] end, int[] index, String descriptor, boolean visible) {
+            long start = System.nanoTime();
+            AnnotationVisitor ret = super.visitLocalVariableAnnotation(typeRef, typePath, startLabels, end, index, descriptor, visible);
+            charge(start);
+            return ret;
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label startLabel) {
+            long start = System.nanoTime();
+            super.visitLineNumber(line, startLabel);
+            charge(start);
+        }
+
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals) {
+            long start = System.nanoTime();
+            super.visitMaxs(maxStack, maxLocals);
+            charge(start);
+        }
+
+        @Override
+        public void visitEnd() {
+            long start = System.nanoTime();
+            super.visitEnd();
+            charge(start);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.minecraftplus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("vignette.ClassTransform")
+@Label("Class Transform")
+@Category("Vignette")
+@Description("A class read, transformed by a chain of transformers and written")
+public final class ClassTransformEvent extends jdk.jfr.Event {
+    @Label("Class")
+    public String className;
+
+    @Label("Input Size")
+    @DataAmount
+    public int inputSize;
+
+    @Label("Output Size")
+    @DataAmount
+    public int outputSize;
+
+    @Label("Transformers")
+    @Description("The transformers the class went through, in order")
+    public String transformers;
+}
@@ -0,0 +1,19 @@
+package org.minecraftplus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("vignette.Deduction")
+@Label("Parameter Deduction")
+@Category("Vignette")
+@Description("The parameter names of a class deduced with the dictionaries")
+public final class DeductionEvent extends jdk.jfr.Event {
+    @Label("Class")
+    public String className;
+
+    @Label("Parameters")
+    @Description("The number of parameter names deduced")
+    public int parameters;
+}
@@ -0,0 +1,25 @@
+package org.minecraftplus.jfr;
+
+/**
+ * Guards the Flight Recorder events, which can only be created on JVMs shipping
+ * {@code jdk.jfr}. Callers check {@link #AVAILABLE} before creating an event:
+ * <pre>
+ * ClassTransformEvent event = Jfr.AVAILABLE ? new ClassTransformEvent() : null;
+ * </pre>
+ * When the JVM is not recording, creating and committing an event is close to free.
+ */
+public final class Jfr {
+    public static final boolean AVAILABLE = isAvailable();
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Jfr.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private Jfr() {
+    }
+}
@@ -0,0 +1,22 @@
+package org.minecraftplus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("vignette.LibraryIndex")
+@Label("Library Index")
+@Category("Vignette")
+@Description("A library indexed or opened from the cache")
+public final class LibraryIndexEvent extends jdk.jfr.Event {
+    @Label("Library")
+    public String library;
+
+    @Label("Classes")
+    public int classes;
+
+    @Label("Built")
+    @Description("Whether the index was built, rather than opened from the cache")
+    public boolean built;
+}
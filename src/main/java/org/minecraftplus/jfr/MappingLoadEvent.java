@@ -0,0 +1,32 @@
+package org.minecraftplus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("vignette.MappingLoad")
+@Label("Mapping Load")
+@Category("Vignette")
+@Description("Mappings read from a file")
+public final class MappingLoadEvent extends jdk.jfr.Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Format")
+    public String format;
+
+    @Label("Compiled")
+    @Description("Whether the mappings were read through the mapping cache, which decodes classes lazily")
+    public boolean compiled;
+
+    @Label("Classes")
+    @Description("The number of class mappings, only counted when not compiled")
+    public int classes = -1;
+
+    @Label("Fields")
+    public int fields = -1;
+
+    @Label("Methods")
+    public int methods = -1;
+}
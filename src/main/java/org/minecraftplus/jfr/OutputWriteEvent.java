@@ -0,0 +1,21 @@
+package org.minecraftplus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("vignette.OutputWrite")
+@Label("Output Write")
+@Category("Vignette")
+public final class OutputWriteEvent extends jdk.jfr.Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+}
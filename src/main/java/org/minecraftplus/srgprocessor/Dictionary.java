@@ -5,6 +5,8 @@
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,8 +17,19 @@
 
 public class Dictionary {
 
+    private static final int[] NO_RULES = new int[0];
+
     private final Map<Trigger, Action> rules = new LinkedHashMap<>();
 
+    // Evaluation plan compiled from the rules on load, see apply
+    private Trigger[] triggers = new Trigger[0];
+    private Action[] actions = new Action[0];
+    private int[] filterIds = NO_RULES;
+    private Pattern[] filters = new Pattern[0];
+    private boolean[] literal = new boolean[0];
+    private Map<String, int[]> literals = new HashMap<>();
+    private int[] patterns = NO_RULES;
+
     public Map<Trigger, Action> getRules() {
         return rules;
     }
@@ -37,9 +50,135 @@ public Dictionary load(InputStream in) throws IOException {
             rules.put(trigger, action);
         }
 
+        compile();
         return this;
     }
 
+    /**
+     * Applies the rules in order to the given parameter name, every matching rule
+     * transforms the result of the previous ones.
+     *
+     * @param name the parameter type class name
+     * @param type the parameter type, checked against the rule filters
+     * @return the transformed name
+     */
+    public String apply(String name, String type) {
+        // Filter results, 0 not evaluated yet, 1 passed, 2 failed
+        final byte[] filtered = filters.length == 0 ? null : new byte[filters.length];
+
+        int[] candidates = literals.getOrDefault(name, NO_RULES);
+        int candidate = 0;
+        int pattern = 0;
+        int next = 0;
+        while (true) {
+            // Literal rules can only match the current name, so only look at those and the real patterns
+            while (candidate < candidates.length && candidates[candidate] < next)
+                candidate++;
+            while (pattern < patterns.length && patterns[pattern] < next)
+                pattern++;
+            final int lit = candidate < candidates.length ? candidates[candidate] : Integer.MAX_VALUE;
+            final int pat = pattern < patterns.length ? patterns[pattern] : Integer.MAX_VALUE;
+            final int rule = Math.min(lit, pat);
+            if (rule == Integer.MAX_VALUE)
+                break;
+            next = rule + 1;
+
+            final int filter = filterIds[rule];
+            if (filter != -1) {
+                if (filtered[filter] == 0)
+                    filtered[filter] = filters[filter].matcher(type).matches() ? (byte)1 : (byte)2;
+                if (filtered[filter] != 1)
+                    continue; // Skip dictionary replaces if filter not pass
+            }
+
+            final String renamed;
+            if (literal[rule]) {
+                renamed = actions[rule].act(name);
+            } else {
+                Matcher matcher = triggers[rule].getPattern().matcher(name);
+                if (!matcher.matches())
+                    continue;
+                renamed = actions[rule].act(matcher);
+            }
+
+            if (!renamed.equals(name)) {
+                name = renamed;
+                candidates = literals.getOrDefault(name, NO_RULES);
+                candidate = 0;
+            }
+        }
+        return name;
+    }
+
+    private void compile() {
+        final int size = rules.size();
+        triggers = new Trigger[size];
+        actions = new Action[size];
+        filterIds = new int[size];
+        literal = new boolean[size];
+
+        final Map<String, Integer> filterIndex = new HashMap<>();
+        final List<Pattern> filterList = new ArrayList<>();
+        final Map<String, List<Integer>> literalIndex = new HashMap<>();
+        final List<Integer> patternIndex = new ArrayList<>();
+
+        int i = 0;
+        for (Map.Entry<Trigger, Action> rule : rules.entrySet()) {
+            final Trigger trigger = rule.getKey();
+            final Action action = rule.getValue();
+            triggers[i] = trigger;
+            actions[i] = action;
+
+            // Rules with the same filter share one evaluation per name
+            final Pattern filter = trigger.getFilter();
+            if (filter == null) {
+                filterIds[i] = -1;
+            } else {
+                filterIds[i] = filterIndex.computeIfAbsent(filter.pattern(), k -> {
+                    filterList.add(filter);
+                    return filterList.size() - 1;
+                });
+            }
+
+            final String lit = getLiteral(trigger.getPattern(), action);
+            if (lit != null) {
+                literal[i] = true;
+                literalIndex.computeIfAbsent(lit, k -> new ArrayList<>()).add(i);
+            } else {
+                patternIndex.add(i);
+            }
+            i++;
+        }
+
+        filters = filterList.toArray(new Pattern[0]);
+        literals = new HashMap<>();
+        literalIndex.forEach((k, v) -> literals.put(k, v.stream().mapToInt(Integer::intValue).toArray()));
+        patterns = patternIndex.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Gets the text a pattern matches if it is a plain, optionally anchored,
+     * literal like {@code ^String$}, otherwise null.
+     */
+    private static String getLiteral(Pattern pattern, Action action) {
+        if (pattern.flags() != 0)
+            return null;
+
+        // Replacements can reference groups, leave those to the matcher
+        if (action.getType() == Action.Type.RENAME && (action.getValue().indexOf('$') != -1 || action.getValue().indexOf('\\') != -1))
+            return null;
+
+        String str = pattern.pattern();
+        int start = str.startsWith("^") ? 1 : 0;
+        int end = str.endsWith("$") && str.length() > start ? str.length() - 1 : str.length();
+        for (int i = start; i < end; i++) {
+            char c = str.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9') && c != '_')
+                return null;
+        }
+        return str.substring(start, end);
+    }
+
     private static String stripComment(String str) {
         int idx = str.indexOf('#');
         if (idx == 0)
@@ -147,6 +286,27 @@ public String getValue() {
             return value;
         }
 
+        /**
+         * Does the action for a literal rule, the input is the whole matched name.
+         */
+        public String act(String input) {
+            switch (type) {
+                case RENAME:
+                    return this.value;
+                case PREFIX:
+                    return this.value + input;
+                case SUFFIX:
+                    return input + this.value;
+                case FIRST:
+                    return Utils.splitCase(input)[0];
+                case LAST:
+                    String[] words = Utils.splitCase(input);
+                    return words[words.length - 1];
+                default:
+                    throw new IllegalStateException("Wait, that's illegal.");
+            }
+        }
+
         public String act(Matcher matcher) {
 
             // Do action, return refactored
@@ -1,7 +1,9 @@
 package org.minecraftplus.srgprocessor;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -11,8 +13,36 @@ public class Utils {
     public static final String PRIMITIVE_TYPES = "ZCBSIJFDV";
     public static final Pattern DESC = Pattern.compile("\\[*L(?<cls>[^;]+);|([" + PRIMITIVE_TYPES + "])");
 
+    /**
+     * Splits camel case words, same as splitting on {@code (?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z])}
+     * but without the regex. A word starts at an upper case letter following a non upper case one,
+     * or at the last upper case letter of a run followed by a lower case one, like in {@code URLConnection}.
+     */
     public static String[] splitCase(String input) {
-        return input.split("(?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z])");
+        List<String> words = null;
+        int start = 0;
+        for (int i = 1; i < input.length(); i++) {
+            if (!isUpper(input.charAt(i)))
+                continue;
+            if (!isUpper(input.charAt(i - 1)) || (i + 1 < input.length() && isLower(input.charAt(i + 1)))) {
+                if (words == null)
+                    words = new ArrayList<>();
+                words.add(input.substring(start, i));
+                start = i;
+            }
+        }
+        if (words == null)
+            return new String[] { input };
+        words.add(input.substring(start));
+        return words.toArray(new String[0]);
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isLower(char c) {
+        return c >= 'a' && c <= 'z';
     }
 
     static {
@@ -0,0 +1,84 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.cadixdev.vignette;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.junit.Test;
+import org.minecraftplus.CompactMappings;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class VignetteTest {
+
+    @Test
+    public void compactMappingsWithCache() throws IOException {
+        final MappingSet mappings = MappingSet.create();
+        mappings.getOrCreateTopLevelClassMapping("a").setDeobfuscatedName("net/Foo");
+        final Path dir = Files.createTempDirectory("vignette-test");
+        try {
+            final Path input = dir.resolve("in.jar");
+            writeJar(input);
+            final Vignette vignette = Vignette.builder()
+                    .mappings(CompactMappings.of(mappings), new byte[] { 1 })
+                    .cache(dir.resolve("cache"))
+                    .build();
+
+            // The first run misses and transforms the classes, the second takes them from the cache
+            final Vignette.Result first = vignette.remap(input, dir.resolve("out1.jar"));
+            assertEquals(0, first.getCacheHits());
+            assertEquals(2, first.getCacheMisses());
+            final Vignette.Result second = vignette.remap(input, dir.resolve("out2.jar"));
+            assertEquals(2, second.getCacheHits());
+            assertEquals(0, second.getCacheMisses());
+
+            for (String output : new String[] { "out1.jar", "out2.jar" }) {
+                try (JarFile jar = new JarFile(dir.resolve(output).toFile())) {
+                    assertNotNull(jar.getEntry("net/Foo.class"));
+                    final JarEntry b = jar.getJarEntry("b.class");
+                    final ClassReader reader = new ClassReader(jar.getInputStream(b));
+                    assertEquals("net/Foo", reader.getSuperName());
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void writeJar(final Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path);
+             JarOutputStream jar = new JarOutputStream(out)) {
+            jar.putNextEntry(new JarEntry("a.class"));
+            jar.write(createClass("a", "java/lang/Object"));
+            jar.putNextEntry(new JarEntry("b.class"));
+            jar.write(createClass("b", "a"));
+        }
+    }
+
+    private static byte[] createClass(final String name, final String superName) {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+}
@@ -0,0 +1,96 @@
+package org.minecraftplus;
+
+import org.cadixdev.bombe.analysis.InheritanceProvider;
+import org.cadixdev.bombe.analysis.InheritanceProvider.ClassInfo;
+import org.cadixdev.bombe.analysis.InheritanceType;
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.asm.LorenzRemapper;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompactRemapperTest {
+    private static final String[] CLASSES = { "a", "a$b", "a$c", "a$c$d", "b", "b$a", "c", "c$a", "java/lang/Object", "[La$b;" };
+
+    @Test
+    public void topLevelOnlyMappings() {
+        // No mapped class has an inner class, the unmapped inner classes are still named after their outer class
+        final MappingSet mappings = MappingSet.create();
+        mappings.getOrCreateTopLevelClassMapping("a").setDeobfuscatedName("net/Foo");
+        mappings.getOrCreateTopLevelClassMapping("b").setDeobfuscatedName("net/Bar");
+        assertSameNames(mappings);
+    }
+
+    @Test
+    public void innerClassMappings() {
+        final MappingSet mappings = MappingSet.create();
+        final ClassMapping<?, ?> a = mappings.getOrCreateTopLevelClassMapping("a").setDeobfuscatedName("net/Foo");
+        a.getOrCreateInnerClassMapping("b").setDeobfuscatedName("Inner");
+        mappings.getOrCreateClassMapping("c$a").setDeobfuscatedName("net/Baz$Other");
+        assertSameNames(mappings);
+    }
+
+    @Test
+    public void inheritedMembers() {
+        final MappingSet mappings = MappingSet.create();
+        final ClassMapping<?, ?> a = mappings.getOrCreateTopLevelClassMapping("a").setDeobfuscatedName("net/Foo");
+        a.getOrCreateFieldMapping("f", "I").setDeobfuscatedName("field");
+        a.getOrCreateFieldMapping("g").setDeobfuscatedName("untyped");
+        a.getOrCreateFieldMapping("h", "I").setDeobfuscatedName("hidden");
+        final MethodMapping m = a.getOrCreateMethodMapping("m", "(I)V").setDeobfuscatedName("method");
+        m.getOrCreateParameterMapping(1).setDeobfuscatedName("param");
+        a.getOrCreateMethodMapping("p", "()V").setDeobfuscatedName("hiddenMethod");
+
+        final Map<String, ClassInfo> classes = new HashMap<>();
+        final Map<FieldSignature, InheritanceType> fields = new HashMap<>();
+        fields.put(new FieldSignature("f", FieldType.of("I")), InheritanceType.PUBLIC);
+        fields.put(new FieldSignature("g", FieldType.of("J")), InheritanceType.PROTECTED);
+        fields.put(new FieldSignature("h", FieldType.of("I")), InheritanceType.NONE);
+        final Map<String, InheritanceType> fieldsByName = new HashMap<>();
+        fields.forEach((sig, type) -> fieldsByName.put(sig.getName(), type));
+        final Map<MethodSignature, InheritanceType> methods = new HashMap<>();
+        methods.put(new MethodSignature("m", MethodDescriptor.of("(I)V")), InheritanceType.PUBLIC);
+        methods.put(new MethodSignature("p", MethodDescriptor.of("()V")), InheritanceType.NONE);
+        classes.put("a", new ClassInfo.Impl("a", false, "java/lang/Object", Collections.emptyList(), fields, fieldsByName, methods));
+        classes.put("b", new ClassInfo.Impl("b", false, "a", Collections.emptyList(), new HashMap<>(), new HashMap<>(), new HashMap<>()));
+        classes.put("c", new ClassInfo.Impl("c", false, "b", Collections.emptyList(), new HashMap<>(), new HashMap<>(), new HashMap<>()));
+        final InheritanceProvider provider = klass -> Optional.ofNullable(classes.get(klass));
+
+        final CompactRemapper compact = new CompactRemapper(CompactMappings.of(mappings), provider);
+        final LorenzRemapper lorenz = new LorenzRemapper(mappings, provider);
+        for (String owner : new String[] { "a", "b", "c", "d" }) {
+            for (String field : new String[] { "f:I", "f:J", "g:J", "h:I", "x:I" }) {
+                final String[] split = field.split(":");
+                assertEquals(owner + "." + field, lorenz.mapFieldName(owner, split[0], split[1]), compact.mapFieldName(owner, split[0], split[1]));
+            }
+            for (String method : new String[] { "m(I)V", "m(J)V", "p()V", "x()V" }) {
+                final int split = method.indexOf('(');
+                final String name = method.substring(0, split);
+                final String desc = method.substring(split);
+                assertEquals(owner + "." + method, lorenz.mapMethodName(owner, name, desc), compact.mapMethodName(owner, name, desc));
+            }
+        }
+        assertEquals("param", compact.getParameters("c", "m", "(I)V")[1]);
+    }
+
+    private static void assertSameNames(MappingSet mappings) {
+        final InheritanceProvider provider = klass -> Optional.empty();
+        // Compacted first, the Lorenz remapper creates the inner class mappings it looks up
+        final CompactRemapper compact = new CompactRemapper(CompactMappings.of(mappings), provider);
+        final LorenzRemapper lorenz = new LorenzRemapper(mappings, provider);
+        for (String cls : CLASSES)
+            assertEquals(cls, lorenz.map(cls), compact.map(cls));
+        assertEquals(lorenz.mapMethodDesc("(La$b;Lb$a;[Lc$a;)La$c$d;"), compact.mapMethodDesc("(La$b;Lb$a;[Lc$a;)La$c$d;"));
+    }
+}
@@ -0,0 +1,170 @@
+package org.minecraftplus.srgprocessor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class DictionaryTest {
+    private static final String[] NAMES = {
+            "String", "Z", "I", "Foo", "FooBuilder", "BarBuilder", "Builder", "EntityLivingBase", "URLConnection",
+            "Vec3d", "List", "ArrayList", "Map", "Entity", "aString", "StringBuilder", "Foo$Bar", "x", ""
+    };
+    private static final String[] TYPES = { "java/lang", "java/util", "net/minecraft/entity", "com/example", "" };
+
+    @Test
+    public void anchoredLiterals() throws IOException {
+        assertSameNames(
+                "^String$ s",
+                "^Z$ flag",
+                "String str",        // Unanchored, still has to match the whole name
+                "^Foo bar",
+                "Foo$ baz",
+                "^Map$ PREFIX:hash",
+                "^List$ SUFFIX:s",
+                "^EntityLivingBase$ LAST",
+                "^URLConnection$ FIRST");
+    }
+
+    @Test
+    public void chainedRules() throws IOException {
+        // Every rule sees the result of the previous ones, literals included
+        assertSameNames(
+                "^StringBuilder$ String",
+                "^String$ Foo",
+                "^Foo$ FooBuilder",
+                "^(\\w+)Builder$ $1",
+                "^Foo$ PREFIX:Bar",
+                "^BarFoo$ LAST",
+                "^Foo$ s");
+    }
+
+    @Test
+    public void groupReferencesInRenames() throws IOException {
+        // $ and \ in replacements are handled by the matcher, even for literal patterns
+        assertSameNames(
+                "^Foo$ a$0",
+                "^Vec3d$ v\\$",
+                "^Map$ m\\\\x",
+                "^(Array)List$ $1",
+                "^Entity$ PREFIX:$0",
+                "^x$ SUFFIX:\\y");
+    }
+
+    @Test
+    public void filters() throws IOException {
+        // Rules sharing a filter see the same result, whatever rules ran before
+        assertSameNames(
+                "^String$:java/lang s",
+                "^Foo$:java/.* f",
+                "^s$:java/lang str",
+                "^f$:java/.* PREFIX:a",
+                "^af$:net/.* b",
+                "^List$:java/util l",
+                "^l$:java/.* SUFFIX:ist",
+                "^Entity$:net/minecraft/.* e",
+                "^e$:java/.* never",
+                "(.*)Builder:com/.* $1");
+    }
+
+    @Test
+    public void generatedDictionaries() throws IOException {
+        final String[] patterns = {
+                "^String$", "String", "^Foo$", "Foo", "^Z$", "^s$", "^f$", "^(\\w+)Builder$", "(.*)Base", "^[A-Z]\\w*$",
+                "^Map$", "^List$", "^l$", "^Entity$", "^e$", "^x$", "^$", "^Foo\\$Bar$", "^a\\w+$"
+        };
+        final String[] filters = { "", ":java/lang", ":java/.*", ":net/.*", ":com/example" };
+        final String[] actions = {
+                "s", "f", "Foo", "String", "$1", "a$0", "x\\$", "PREFIX:a", "PREFIX:$0", "SUFFIX:s", "SUFFIX:\\y",
+                "FIRST", "LAST", "RENAME:e", "Builder"
+        };
+        final Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            final String[] lines = new String[1 + random.nextInt(12)];
+            for (int j = 0; j < lines.length; j++) {
+                lines[j] = patterns[random.nextInt(patterns.length)] + filters[random.nextInt(filters.length)]
+                        + ' ' + actions[random.nextInt(actions.length)];
+            }
+            final Dictionary dictionary;
+            try {
+                dictionary = load(lines);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+                continue; // Group references the pattern doesn't have fail the same way in both
+            }
+            assertSameNames(dictionary, String.join("\n", lines));
+        }
+    }
+
+    private static void assertSameNames(String... lines) throws IOException {
+        assertSameNames(load(lines), String.join("\n", lines));
+    }
+
+    private static void assertSameNames(Dictionary dictionary, String text) {
+        for (String name : NAMES) {
+            for (String type : TYPES) {
+                String expected;
+                try {
+                    expected = previousApply(dictionary, name, type);
+                } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+                    expected = ex.getClass().getName();
+                }
+                String actual;
+                try {
+                    actual = dictionary.apply(name, type);
+                } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+                    actual = ex.getClass().getName();
+                }
+                assertEquals(text + "\n" + name + " " + type, expected, actual);
+            }
+        }
+    }
+
+    private static Dictionary load(String... lines) throws IOException {
+        return new Dictionary().load(new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * How the rules were applied before they were compiled, matching every rule in order.
+     */
+    private static String previousApply(Dictionary dictionary, String name, String type) {
+        for (Map.Entry<Dictionary.Trigger, Dictionary.Action> rule : dictionary.getRules().entrySet()) {
+            final Pattern filter = rule.getKey().getFilter();
+            if (filter != null && !filter.matcher(type).matches())
+                continue;
+
+            final Matcher matcher = rule.getKey().getPattern().matcher(name);
+            if (matcher.matches())
+                name = previousAct(rule.getValue(), matcher);
+        }
+        return name;
+    }
+
+    private static String previousAct(Dictionary.Action action, Matcher matcher) {
+        switch (action.getType()) {
+            case RENAME:
+                return matcher.replaceFirst(action.getValue());
+            case PREFIX:
+                return action.getValue() + matcher.group();
+            case SUFFIX:
+                return matcher.group() + action.getValue();
+            case FIRST:
+                return previousSplitCase(matcher.group())[0];
+            case LAST:
+                final String[] words = previousSplitCase(matcher.group());
+                return words[words.length - 1];
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private static String[] previousSplitCase(String input) {
+        return input.split("(?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z])");
+    }
+}
@@ -0,0 +1,40 @@
+package org.minecraftplus.srgprocessor;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class UtilsTest {
+    // What splitCase did before it was a scanner
+    private static final String SPLIT = "(?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z])";
+
+    @Test
+    public void splitCases() {
+        final String[] inputs = {
+                "", "a", "A", "foo", "Foo", "FooBar", "fooBar", "FOO", "FOOBar", "URLConnection", "getURL",
+                "EntityLivingBase", "ABc", "AbC", "aBC", "Vec3d", "Vec3D", "Block2Item", "item2Block", "IO",
+                "HTTPServer2Go", "X509Certificate", "a_B", "Foo_Bar", "_Foo", "$Inner", "Outer$Inner", "Ab",
+                "AAb", "aA", "aAb", "AAAA", "\u00dcn\u00efcode", "foo\u00c4Bar"
+        };
+        for (String input : inputs)
+            assertSplit(input);
+    }
+
+    @Test
+    public void generatedInputs() {
+        final String alphabet = "aAbBzZ09_$";
+        final Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            final char[] chars = new char[random.nextInt(9)];
+            for (int j = 0; j < chars.length; j++)
+                chars[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+            assertSplit(new String(chars));
+        }
+    }
+
+    private static void assertSplit(String input) {
+        assertArrayEquals(input, input.split(SPLIT), Utils.splitCase(input));
+    }
+}